@@ -3,6 +3,7 @@ import com.google.protobuf.gradle.*
 plugins {
     id("java")
     id("com.google.protobuf") version "0.9.4"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "org.code"
@@ -15,9 +16,15 @@ repositories {
 dependencies {
     testImplementation(platform("org.junit:junit-bom:5.10.0"))
     testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 
     // https://mvnrepository.com/artifact/io.grpc/grpc-all
     implementation("io.grpc:grpc-all:1.63.0")
+    // https://mvnrepository.com/artifact/io.grpc/grpc-netty
+    implementation("io.grpc:grpc-netty:1.63.0")
+    // https://mvnrepository.com/artifact/io.netty/netty-transport-native-epoll
+    implementation("io.netty:netty-transport-classes-epoll:4.1.100.Final")
+    runtimeOnly("io.netty:netty-transport-native-epoll:4.1.100.Final:linux-x86_64")
     /// https://mvnrepository.com/artifact/javax.annotation/javax.annotation-api
     implementation("javax.annotation:javax.annotation-api:1.3.2")
 
@@ -34,6 +41,8 @@ dependencies {
     implementation("ch.qos.logback:logback-classic:1.5.6")
     // https://mvnrepository.com/artifact/ch.qos.logback/logback-core
     implementation("ch.qos.logback:logback-core:1.5.6")
+    // https://mvnrepository.com/artifact/org.hdrhistogram/HdrHistogram
+    implementation("org.hdrhistogram:HdrHistogram:2.2.2")
 }
 
 tasks.test {
@@ -67,6 +76,16 @@ protobuf {
     }
 }
 
+// Benchmarks live in src/jmh/java, run them with `gradle jmh`.
+// A subset can be selected with `gradle jmh -PjmhIncludes=GreeterBenchmark.unary`.
+jmh {
+    jmhVersion.set("1.37")
+    // Allocation rate per operation next to throughput and latency
+    profilers.set(listOf("gc"))
+    resultFormat.set("JSON")
+    project.findProperty("jmhIncludes")?.let { includes.set(listOf(it.toString())) }
+}
+
 tasks.withType<JavaCompile> {
     options.encoding = "UTF-8"
 }
\ No newline at end of file
@@ -0,0 +1,165 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import ch.qos.logback.classic.Logger;
+import io.grpc.GreeterGrpc;
+import io.grpc.Hello;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the four Greeter call shapes against both the in-process transport and the Netty server
+ * started by {@link GRpcServerLauncher}. Throughput, average time and sampled latency (p99) are reported
+ * for every call shape, run with {@code gradle jmh} to also get the allocation rate from {@code -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GreeterBenchmark {
+	private static final Hello.HelloRequest REQUEST = Hello.HelloRequest.newBuilder().setName("hello").setSex("man").build();
+
+	@Param({"inprocess", "netty"})
+	private String transport;
+
+	@Param({"10"})
+	private int streamLength;
+
+	private Server inProcessServer;
+	private GRpcServerLauncher nettyServer;
+	private ManagedChannel managedChannel;
+	private GreeterGrpc.GreeterBlockingStub greeterBlockingStub;
+	private GreeterGrpc.GreeterStub greeterStub;
+	// Asks the server streaming call for streamLength replies
+	private Hello.HelloRequest streamRequest;
+
+	/**
+	 * Starts the server for the selected transport and connects a channel to it.
+	 *
+	 * @throws IOException If the server could not be started.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		// The service logs every streamed message, keep the console out of the measurement
+		((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(ch.qos.logback.classic.Level.WARN);
+
+		if ("inprocess".equals(transport)) {
+			String serverName = InProcessServerBuilder.generateName();
+			inProcessServer = InProcessServerBuilder.forName(serverName).addService(new GRpcServerLauncher.GreeterServiceImpl()).build().start();
+			managedChannel = InProcessChannelBuilder.forName(serverName).build();
+		} else {
+			// Port 0 lets the operating system pick a free port
+			nettyServer = new GRpcServerLauncher(0, new GRpcServerLauncher.GreeterServiceImpl());
+			Server server = nettyServer.start();
+			managedChannel = new GRpcClientLauncher(server.getPort()).getManagedChannel();
+		}
+		greeterBlockingStub = GreeterGrpc.newBlockingStub(managedChannel);
+		greeterStub = GreeterGrpc.newStub(managedChannel);
+		streamRequest = REQUEST.toBuilder().setReplyCount(streamLength).build();
+	}
+
+	/**
+	 * Closes the channel and the server started in {@link #setUp()}.
+	 *
+	 * @throws InterruptedException If the current thread is interrupted while waiting.
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws InterruptedException {
+		managedChannel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+		if (inProcessServer != null) {
+			inProcessServer.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+		}
+		if (nettyServer != null) {
+			nettyServer.stopNow();
+			nettyServer.awaitTermination(5, TimeUnit.SECONDS);
+		}
+	}
+
+	@Benchmark
+	public Hello.HelloReply unary() {
+		return greeterBlockingStub.sayHello(REQUEST);
+	}
+
+	@Benchmark
+	public int clientStreaming(Blackhole blackhole) {
+		CollectingObserver collectingObserver = new CollectingObserver(blackhole);
+		StreamObserver<Hello.HelloRequest> requestObserver = greeterStub.sayHello2(collectingObserver);
+		for (int i = 0; i < streamLength; ++i) {
+			requestObserver.onNext(REQUEST);
+		}
+		requestObserver.onCompleted();
+		return collectingObserver.await();
+	}
+
+	@Benchmark
+	public void serverStreaming(Blackhole blackhole) {
+		Iterator<Hello.HelloReply> helloReplyIterator = greeterBlockingStub.sayHello3(streamRequest);
+		while (helloReplyIterator.hasNext()) {
+			blackhole.consume(helloReplyIterator.next());
+		}
+	}
+
+	@Benchmark
+	public int bidiStreaming(Blackhole blackhole) {
+		CollectingObserver collectingObserver = new CollectingObserver(blackhole);
+		StreamObserver<Hello.HelloRequest> requestObserver = greeterStub.sayHello4(collectingObserver);
+		for (int i = 0; i < streamLength; ++i) {
+			requestObserver.onNext(REQUEST);
+		}
+		requestObserver.onCompleted();
+		return collectingObserver.await();
+	}
+
+	/**
+	 * Response observer that hands every reply to the blackhole and completes once the server closes the call.
+	 */
+	private static class CollectingObserver implements StreamObserver<Hello.HelloReply> {
+		private final Blackhole blackhole;
+		private final CompletableFuture<Integer> done = new CompletableFuture<>();
+		private int count = 0;
+
+		CollectingObserver(Blackhole blackhole) {
+			this.blackhole = blackhole;
+		}
+
+		@Override
+		public void onNext(Hello.HelloReply helloReply) {
+			blackhole.consume(helloReply);
+			count++;
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			done.completeExceptionally(throwable);
+		}
+
+		@Override
+		public void onCompleted() {
+			done.complete(count);
+		}
+
+		/**
+		 * Blocks until the call has finished.
+		 *
+		 * @return The number of replies received.
+		 */
+		int await() {
+			return done.join();
+		}
+	}
+}
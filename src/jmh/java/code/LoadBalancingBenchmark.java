@@ -0,0 +1,97 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import ch.qos.logback.classic.Logger;
+import io.grpc.Hello;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shows the tail latency of SayHello against three {@link GRpcServerLauncher} backends, one of them deliberately slow.
+ * Pinning the slow backend with pick_first puts its delay on every call, round_robin on a third of them, least_request
+ * on fewer as the calls pile up there, and hedging lets a second attempt on a healthy backend answer before the slow one
+ * does. Compare the p99 of the sample mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class LoadBalancingBenchmark {
+	private static final Hello.HelloRequest REQUEST = Hello.HelloRequest.newBuilder().setName("hello").setSex("man").build();
+	private static final int BACKEND_COUNT = 3;
+	private static final long SLOW_BACKEND_DELAY_MILLIS = 50;
+
+	@Param({"pick_first", "round_robin", "round_robin_hedged", "least_request", "least_request_hedged"})
+	private String policy;
+
+	private final List<GRpcServerLauncher> serverLaunchers = new ArrayList<>();
+	private GRpcClientLauncher client;
+
+	/**
+	 * Starts the backends, the slow one first so pick_first connects to it, and a client spreading calls over them.
+	 *
+	 * @throws IOException If a server could not be started.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(ch.qos.logback.classic.Level.WARN);
+
+		List<InetSocketAddress> backends = new ArrayList<>();
+		for (int i = 0; i < BACKEND_COUNT; ++i) {
+			GRpcServerLauncher.GRpcServerLauncherBuilder serverLauncherBuilder = GRpcServerLauncher.builder()
+					.port(0)
+					.bindableService(new GRpcServerLauncher.GreeterServiceImpl());
+			if (i == 0) {
+				serverLauncherBuilder.interceptor(new DelayInterceptor(SLOW_BACKEND_DELAY_MILLIS));
+			}
+			GRpcServerLauncher serverLauncher = serverLauncherBuilder.build();
+			backends.add(new InetSocketAddress("127.0.0.1", serverLauncher.start().getPort()));
+			serverLaunchers.add(serverLauncher);
+		}
+
+		Map<String, ?> serviceConfig = switch (policy) {
+			case "pick_first" -> Map.of("loadBalancingConfig", List.of(Map.of("pick_first", Map.of())));
+			case "round_robin" -> GreeterServiceConfig.create("round_robin", 1, 0);
+			case "round_robin_hedged" -> GreeterServiceConfig.create("round_robin", 3, 5);
+			case "least_request" -> GreeterServiceConfig.create(GreeterServiceConfig.LEAST_REQUEST, 1, 0);
+			default -> GreeterServiceConfig.create(GreeterServiceConfig.LEAST_REQUEST, 3, 5);
+		};
+		client = GRpcClientLauncher.builder()
+				.name("greeter")
+				.backends(backends)
+				.serviceConfig(serviceConfig)
+				.build();
+	}
+
+	/**
+	 * Closes the client and the backends started in {@link #setUp()}.
+	 *
+	 * @throws InterruptedException If the current thread is interrupted while waiting.
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws InterruptedException {
+		client.getManagedChannel().shutdownNow();
+		client.awaitTermination(5, TimeUnit.SECONDS);
+		for (GRpcServerLauncher serverLauncher : serverLaunchers) {
+			serverLauncher.stopNow();
+			serverLauncher.awaitTermination(5, TimeUnit.SECONDS);
+		}
+	}
+
+	@Benchmark
+	public Hello.HelloReply sayHello() {
+		return client.getGreeterBlockingStub().sayHello(REQUEST);
+	}
+}
@@ -0,0 +1,110 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import ch.qos.logback.classic.Logger;
+import com.google.protobuf.ByteString;
+import io.grpc.CallOptions;
+import io.grpc.GreeterGrpc;
+import io.grpc.Hello;
+import io.grpc.MethodDescriptor;
+import io.grpc.stub.ClientCalls;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the default protobuf marshaller with {@link ZeroCopyMarshaller} on SayHelloBlob over the Netty transport,
+ * for payloads from 1 KB to 16 MB echoed by the server. Both sides use the selected marshaller.
+ * Run with {@code gradle jmh -PjmhIncludes=PayloadMarshallerBenchmark} to get the allocation rate per call from {@code -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PayloadMarshallerBenchmark {
+	private static final int MAX_MESSAGE_SIZE = 32 * 1024 * 1024;
+
+	@Param({"1024", "65536", "1048576", "16777216"})
+	private int payloadSize;
+
+	@Param({"default", "zerocopy"})
+	private String marshaller;
+
+	private GRpcServerLauncher serverLauncher;
+	private GRpcClientLauncher client;
+	private MethodDescriptor<Hello.HelloBlobRequest, Hello.HelloBlobReply> methodDescriptor;
+	private ZeroCopyMarshaller<Hello.HelloBlobReply> replyMarshaller;
+	private Hello.HelloBlobRequest request;
+
+	/**
+	 * Starts a server and a client using the selected marshaller, both accepting messages up to 32 MB.
+	 *
+	 * @throws IOException If the server could not be started.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(ch.qos.logback.classic.Level.WARN);
+
+		GRpcServerLauncher.GreeterServiceImpl greeterService = new GRpcServerLauncher.GreeterServiceImpl();
+		methodDescriptor = GreeterGrpc.getSayHelloBlobMethod();
+		if ("zerocopy".equals(marshaller)) {
+			replyMarshaller = new ZeroCopyMarshaller<>(Hello.HelloBlobReply.getDefaultInstance());
+			ZeroCopyMarshaller<Hello.HelloBlobRequest> requestMarshaller = new ZeroCopyMarshaller<>(Hello.HelloBlobRequest.getDefaultInstance());
+			methodDescriptor = methodDescriptor.toBuilder(requestMarshaller, replyMarshaller).build();
+			// The server gets its own marshallers, they keep track of the buffers of the messages they parsed
+			serverLauncher = GRpcServerLauncher.builder()
+					.port(0)
+					.bindableService(() -> ZeroCopyMarshaller.useFor(greeterService.bindService(), GreeterGrpc.getSayHelloBlobMethod(),
+							new ZeroCopyMarshaller<>(Hello.HelloBlobRequest.getDefaultInstance()),
+							new ZeroCopyMarshaller<>(Hello.HelloBlobReply.getDefaultInstance())))
+					.nettyTransportOptions(NettyTransportOptions.builder().maxInboundMessageSize(MAX_MESSAGE_SIZE).build())
+					.build();
+		} else {
+			serverLauncher = GRpcServerLauncher.builder()
+					.port(0)
+					.bindableService(greeterService)
+					.nettyTransportOptions(NettyTransportOptions.builder().maxInboundMessageSize(MAX_MESSAGE_SIZE).build())
+					.build();
+		}
+		client = GRpcClientLauncher.builder()
+				.name("127.0.0.1")
+				.port(serverLauncher.start().getPort())
+				.nettyTransportOptions(NettyTransportOptions.builder().maxInboundMessageSize(MAX_MESSAGE_SIZE).build())
+				.build();
+
+		byte[] payload = new byte[payloadSize];
+		ThreadLocalRandom.current().nextBytes(payload);
+		request = Hello.HelloBlobRequest.newBuilder().setName("hello").setPayload(ByteString.copyFrom(payload)).build();
+	}
+
+	/**
+	 * Closes the client and the server started in {@link #setUp()}.
+	 *
+	 * @throws InterruptedException If the current thread is interrupted while waiting.
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws InterruptedException {
+		client.getManagedChannel().shutdownNow();
+		client.awaitTermination(5, TimeUnit.SECONDS);
+		serverLauncher.stopNow();
+		serverLauncher.awaitTermination(5, TimeUnit.SECONDS);
+	}
+
+	@Benchmark
+	public int sayHelloBlob() {
+		Hello.HelloBlobReply reply = ClientCalls.blockingUnaryCall(client.getManagedChannel(), methodDescriptor, CallOptions.DEFAULT, request);
+		// Reading one byte is enough to touch the payload, the aliased buffers are released right after
+		int size = reply.getPayload().size() + reply.getPayload().byteAt(0);
+		if (replyMarshaller != null) {
+			replyMarshaller.release(reply);
+		}
+		return size;
+	}
+}
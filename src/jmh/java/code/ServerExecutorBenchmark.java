@@ -0,0 +1,104 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import ch.qos.logback.classic.Logger;
+import io.grpc.GreeterGrpc;
+import io.grpc.Hello;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.stub.StreamObserver;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the handler executors of {@link GRpcServerLauncher} under many concurrent callers.
+ * {@code VIRTUAL_THREADS} needs Java 21 or newer and is left out of the defaults, on such a runtime add it with
+ * {@code java -jar build/libs/*-jmh.jar ServerExecutorBenchmark -p executorType=VIRTUAL_THREADS}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+@Fork(1)
+public class ServerExecutorBenchmark {
+	private static final Hello.HelloRequest REQUEST = Hello.HelloRequest.newBuilder().setName("hello").setSex("man").build();
+
+	@Param({"DEFAULT", "DIRECT", "FORK_JOIN"})
+	private GRpcServerLauncher.ExecutorType executorType;
+
+	private GRpcServerLauncher serverLauncher;
+	private ManagedChannel managedChannel;
+	private GreeterGrpc.GreeterBlockingStub greeterBlockingStub;
+	private GreeterGrpc.GreeterStub greeterStub;
+
+	/**
+	 * Starts the server with the selected executor and connects a channel to it.
+	 *
+	 * @throws IOException If the server could not be started.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		// The service logs every streamed message, keep the console out of the measurement
+		((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(ch.qos.logback.classic.Level.WARN);
+
+		serverLauncher = GRpcServerLauncher.builder()
+				.port(0)
+				.bindableService(new GRpcServerLauncher.GreeterServiceImpl())
+				.executorType(executorType)
+				.build();
+		Server server = serverLauncher.start();
+		managedChannel = new GRpcClientLauncher(server.getPort()).getManagedChannel();
+		greeterBlockingStub = GreeterGrpc.newBlockingStub(managedChannel);
+		greeterStub = GreeterGrpc.newStub(managedChannel);
+	}
+
+	/**
+	 * Closes the channel and the server started in {@link #setUp()}.
+	 *
+	 * @throws InterruptedException If the current thread is interrupted while waiting.
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws InterruptedException {
+		managedChannel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+		serverLauncher.stopNow();
+		serverLauncher.awaitTermination(5, TimeUnit.SECONDS);
+	}
+
+	@Benchmark
+	public Hello.HelloReply unary() {
+		return greeterBlockingStub.sayHello(REQUEST);
+	}
+
+	@Benchmark
+	public Boolean bidiStreaming() {
+		CompletableFuture<Boolean> done = new CompletableFuture<>();
+		StreamObserver<Hello.HelloRequest> requestObserver = greeterStub.sayHello4(new StreamObserver<Hello.HelloReply>() {
+			@Override
+			public void onNext(Hello.HelloReply helloReply) {
+			}
+
+			@Override
+			public void onError(Throwable throwable) {
+				done.completeExceptionally(throwable);
+			}
+
+			@Override
+			public void onCompleted() {
+				done.complete(Boolean.TRUE);
+			}
+		});
+		for (int i = 0; i < 10; ++i) {
+			requestObserver.onNext(REQUEST);
+		}
+		requestObserver.onCompleted();
+		return done.join();
+	}
+}
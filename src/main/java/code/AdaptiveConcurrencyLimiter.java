@@ -0,0 +1,141 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrency limit adjusted from the observed latency, after TCP Vegas.
+ * Latencies are averaged over windows of completed calls so that the limit follows the load rather than the jitter of
+ * single calls. The lowest window average seen recently is taken as the latency of an idle server, and the ratio between
+ * it and the average of the latest window estimates how many calls are queued: the limit grows while the queue is short
+ * and shrinks once it grows long, and drops faster when calls time out or are rejected further down.
+ * The estimate assumes that the calls share one latency profile, so a limiter should only cover a single method.
+ * Admission is a lock-free compare-and-set on the in-flight count, only the limit update takes a lock.
+ */
+@Getter
+public class AdaptiveConcurrencyLimiter {
+	private final int minLimit;
+	private final int maxLimit;
+	private final boolean adaptive;
+	private final int windowSize;
+	private final int probeInterval;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private volatile int limit;
+
+	// Guarded by this
+	private long minRttNanos = Long.MAX_VALUE;
+	private int windowsSinceProbe = 0;
+	private int windowSamples = 0;
+	private long windowRttSumNanos = 0;
+	private int windowMaxInFlight = 0;
+
+	/**
+	 * Constructs a new limiter.
+	 *
+	 * @param initialLimit  The limit before any latency was observed.
+	 * @param minLimit      The lowest the limit can go.
+	 * @param maxLimit      The highest the limit can go.
+	 * @param adaptive      Whether the limit follows the latency, the initial limit stays fixed otherwise.
+	 * @param windowSize    The number of completed calls whose latencies are averaged before the limit is updated, 50 if not positive.
+	 * @param probeInterval The number of windows after which the idle latency is measured again, so it follows changes of the baseline.
+	 */
+	@Builder
+	public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, boolean adaptive, int windowSize, int probeInterval) {
+		this.minLimit = Math.max(1, minLimit);
+		this.maxLimit = maxLimit > 0 ? maxLimit : 1000;
+		this.adaptive = adaptive;
+		this.windowSize = windowSize > 0 ? windowSize : 50;
+		this.probeInterval = probeInterval > 0 ? probeInterval : 100;
+		this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit > 0 ? initialLimit : 20));
+	}
+
+	/**
+	 * Tries to admit a call.
+	 *
+	 * @return The number of calls in flight including this one, or -1 if the limit is reached and the call must be rejected.
+	 */
+	public int tryAcquire() {
+		while (true) {
+			int current = inFlight.get();
+			if (current >= limit) {
+				return -1;
+			}
+			if (inFlight.compareAndSet(current, current + 1)) {
+				return current + 1;
+			}
+		}
+	}
+
+	/**
+	 * Releases an admitted call that completed successfully and feeds its latency to the limit.
+	 *
+	 * @param rttNanos        The latency of the call in nanoseconds.
+	 * @param inFlightAtStart The number of calls in flight when the call was admitted.
+	 */
+	public void onSuccess(long rttNanos, int inFlightAtStart) {
+		inFlight.decrementAndGet();
+		if (adaptive) {
+			update(rttNanos, inFlightAtStart);
+		}
+	}
+
+	/**
+	 * Releases an admitted call that timed out or was rejected further down, a sign of overload.
+	 */
+	public void onDropped() {
+		inFlight.decrementAndGet();
+		if (adaptive) {
+			synchronized (this) {
+				limit = Math.max(minLimit, (int) (limit * 0.9));
+			}
+		}
+	}
+
+	/**
+	 * Releases an admitted call whose outcome says nothing about the load, e.g. a cancelled call.
+	 */
+	public void onIgnored() {
+		inFlight.decrementAndGet();
+	}
+
+	private synchronized void update(long rttNanos, int inFlightAtStart) {
+		windowRttSumNanos += Math.max(1, rttNanos);
+		windowMaxInFlight = Math.max(windowMaxInFlight, inFlightAtStart);
+		if (++windowSamples < windowSize) {
+			return;
+		}
+		long windowRttNanos = windowRttSumNanos / windowSamples;
+		int maxInFlight = windowMaxInFlight;
+		windowSamples = 0;
+		windowRttSumNanos = 0;
+		windowMaxInFlight = 0;
+
+		if (++windowsSinceProbe >= probeInterval) {
+			windowsSinceProbe = 0;
+			minRttNanos = windowRttNanos;
+		}
+		minRttNanos = Math.min(minRttNanos, windowRttNanos);
+
+		int currentLimit = limit;
+		int step = Math.max(1, (int) Math.log10(currentLimit));
+		double queueSize = currentLimit * (1 - (double) minRttNanos / windowRttNanos);
+		int newLimit;
+		if (queueSize <= 3 * step) {
+			// A server that was not using half of its limit tells nothing about whether a higher limit would hold
+			if (maxInFlight * 2 < currentLimit) {
+				return;
+			}
+			newLimit = currentLimit + step;
+		} else if (queueSize >= 6 * step) {
+			newLimit = currentLimit - step;
+		} else {
+			return;
+		}
+		limit = Math.min(maxLimit, Math.max(minLimit, newLimit));
+	}
+}
@@ -0,0 +1,134 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import io.grpc.*;
+import lombok.Getter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Server interceptor admitting calls through an {@link AdaptiveConcurrencyLimiter} per method, so that fast and slow
+ * methods do not distort each other's latency baseline. Calls over the limit fail fast with {@code RESOURCE_EXHAUSTED}
+ * before reaching the service, so the admitted calls keep their latency under overload instead of all of them slowing
+ * down until they time out.
+ */
+@Getter
+public class ConcurrencyLimitInterceptor implements ServerInterceptor {
+	// A client cancelling on its own deadline usually arrives just before the server's copy of the deadline expires
+	private static final long DEADLINE_SLACK_MILLIS = 10;
+
+	private final Supplier<AdaptiveConcurrencyLimiter> unaryLimiters;
+	private final Supplier<AdaptiveConcurrencyLimiter> streamingLimiters;
+	private final ConcurrentMap<String, AdaptiveConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+	private final LongAdder rejected = new LongAdder();
+
+	/**
+	 * Constructs a new admission control interceptor.
+	 *
+	 * @param unaryLimiters     Creates the limiter of each unary method.
+	 * @param streamingLimiters Creates the limiter of each client, server and bidi streaming method.
+	 */
+	public ConcurrencyLimitInterceptor(Supplier<AdaptiveConcurrencyLimiter> unaryLimiters, Supplier<AdaptiveConcurrencyLimiter> streamingLimiters) {
+		this.unaryLimiters = unaryLimiters;
+		this.streamingLimiters = streamingLimiters;
+	}
+
+	/**
+	 * Returns the limiter of a method.
+	 *
+	 * @param fullMethodName The full method name.
+	 *
+	 * @return The limiter, or null if the method has not been called yet.
+	 */
+	public AdaptiveConcurrencyLimiter getLimiter(String fullMethodName) {
+		return limiters.get(fullMethodName);
+	}
+
+	private AdaptiveConcurrencyLimiter limiterFor(MethodDescriptor<?, ?> methodDescriptor) {
+		AdaptiveConcurrencyLimiter limiter = limiters.get(methodDescriptor.getFullMethodName());
+		if (limiter != null) {
+			return limiter;
+		}
+		Supplier<AdaptiveConcurrencyLimiter> limiterSupplier = methodDescriptor.getType() == MethodDescriptor.MethodType.UNARY ? unaryLimiters : streamingLimiters;
+		return limiters.computeIfAbsent(methodDescriptor.getFullMethodName(), fullMethodName -> limiterSupplier.get());
+	}
+
+	@Override
+	public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+		AdaptiveConcurrencyLimiter limiter = limiterFor(call.getMethodDescriptor());
+		int inFlightAtStart = limiter.tryAcquire();
+		if (inFlightAtStart < 0) {
+			rejected.increment();
+			call.close(Status.RESOURCE_EXHAUSTED.withDescription("Concurrency limit of " + limiter.getLimit() + " reached"), new Metadata());
+			return new ServerCall.Listener<ReqT>() {
+			};
+		}
+
+		// The permit is released exactly once, by whichever of close, cancel or complete comes first
+		long start = System.nanoTime();
+		AtomicBoolean released = new AtomicBoolean();
+		AtomicBoolean skipLatency = new AtomicBoolean();
+		Runnable succeeded = () -> {
+			if (skipLatency.get()) {
+				limiter.onIgnored();
+			} else {
+				limiter.onSuccess(System.nanoTime() - start, inFlightAtStart);
+			}
+		};
+		ServerCall<ReqT, RespT> limitedServerCall = new ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT>(call) {
+			@Override
+			public void close(Status status, Metadata trailers) {
+				if (released.compareAndSet(false, true)) {
+					switch (status.getCode()) {
+						case OK -> succeeded.run();
+						case DEADLINE_EXCEEDED, RESOURCE_EXHAUSTED -> limiter.onDropped();
+						default -> limiter.onIgnored();
+					}
+				}
+				super.close(status, trailers);
+			}
+		};
+		ServerCall.Listener<ReqT> listener;
+		try {
+			// Every callback of the call runs in this context, so the service and the inner interceptors can reach the flag,
+			// calls answered without the work the limit protects, such as cache hits, set it through LatencySampling
+			listener = Contexts.interceptCall(LatencySampling.withFlag(skipLatency), limitedServerCall, headers, next);
+		} catch (RuntimeException e) {
+			if (released.compareAndSet(false, true)) {
+				limiter.onIgnored();
+			}
+			throw e;
+		}
+		return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(listener) {
+			@Override
+			public void onCancel() {
+				if (released.compareAndSet(false, true)) {
+					// A deadline expiring cancels the call rather than closing it, it still means the call took too long
+					Deadline deadline = Context.current().getDeadline();
+					if (deadline != null && deadline.timeRemaining(TimeUnit.MILLISECONDS) <= DEADLINE_SLACK_MILLIS) {
+						limiter.onDropped();
+					} else {
+						limiter.onIgnored();
+					}
+				}
+				super.onCancel();
+			}
+
+			@Override
+			public void onComplete() {
+				// Reached when an interceptor further down closed the underlying call directly
+				if (released.compareAndSet(false, true)) {
+					succeeded.run();
+				}
+				super.onComplete();
+			}
+		};
+	}
+}
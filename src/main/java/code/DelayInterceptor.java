@@ -0,0 +1,40 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import lombok.Getter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server interceptor making a backend slow by holding every call before it reaches the service, for tests and
+ * benchmarks of how clients spread load over backends of uneven speed.
+ */
+@Getter
+public class DelayInterceptor implements ServerInterceptor {
+	private final long delayMillis;
+
+	/**
+	 * Constructs a new delaying interceptor.
+	 *
+	 * @param delayMillis How long every call is held, in milliseconds.
+	 */
+	public DelayInterceptor(long delayMillis) {
+		this.delayMillis = delayMillis;
+	}
+
+	@Override
+	public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+		try {
+			TimeUnit.MILLISECONDS.sleep(delayMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return next.startCall(call, headers);
+	}
+}
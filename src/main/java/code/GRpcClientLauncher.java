@@ -7,14 +7,28 @@ import io.grpc.GreeterGrpc;
 import io.grpc.Hello;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.NameResolverProvider;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
 import io.grpc.stub.StreamObserver;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import lombok.Builder;
 import lombok.Getter;
+import lombok.Singular;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * GRpcClient is a class that represents a client for a gRPC service.
@@ -28,6 +42,10 @@ public class GRpcClientLauncher {
 	private final int port;
 	private final GreeterGrpc.GreeterBlockingStub greeterBlockingStub;
 	private final GreeterGrpc.GreeterStub greeterFutureStub;
+	private final NettyTransportOptions nettyTransportOptions;
+	private final EventLoopGroup eventLoopGroup;
+	private final RpcMetrics rpcMetrics;
+	private final List<InetSocketAddress> backends;
 
 	/**
 	 * Constructs a new GRpcClient instance with the specified server name and port.
@@ -38,21 +56,7 @@ public class GRpcClientLauncher {
 	 * @throws InterruptedException If there is an error creating the managed channel.
 	 */
 	public GRpcClientLauncher(String name, int port) throws InterruptedException {
-		// Set the server name
-		this.name = name;
-
-		// Set the port number
-		this.port = port;
-
-		// Create a new ManagedChannel with the specified server address and port number
-		// The channel is configured to use plaintext
-		this.managedChannel = ManagedChannelBuilder.forAddress(this.name, this.port).usePlaintext().build();
-
-		// Create a new blocking-style stub for the Greeter service
-		greeterBlockingStub = GreeterGrpc.newBlockingStub(managedChannel);
-
-		// Create a new stub for the Greeter service
-		greeterFutureStub = GreeterGrpc.newStub(managedChannel);
+		this(name, port, null, null, List.of(), null);
 	}
 
 	/**
@@ -64,14 +68,52 @@ public class GRpcClientLauncher {
 	 */
 	public GRpcClientLauncher(int port) {
 		// Set the server name to "127.0.0.1"
-		this.name = "127.0.0.1";
+		this("127.0.0.1", port, null, null, List.of(), null);
+	}
+
+	/**
+	 * Constructs a new GRpcClient instance with the specified server name, port and Netty transport settings.
+	 *
+	 * @param name                  The name of the server to connect to.
+	 * @param port                  The port number to connect to the server.
+	 * @param nettyTransportOptions The Netty transport settings, the default transport if null.
+	 * @param rpcMetrics            The metrics recording every call, none if null.
+	 * @param backends              The backends to spread the calls over instead of connecting to name and port, name then only names the target.
+	 * @param serviceConfig         The service config used with backends, {@link GreeterServiceConfig} with least request and hedging if null.
+	 */
+	@Builder
+	public GRpcClientLauncher(String name, int port, NettyTransportOptions nettyTransportOptions, RpcMetrics rpcMetrics, @Singular List<InetSocketAddress> backends, Map<String, ?> serviceConfig) {
+		// Set the server name
+		this.name = name;
 
 		// Set the port number
 		this.port = port;
 
 		// Create a new ManagedChannel with the specified server address and port number
 		// The channel is configured to use plaintext
-		this.managedChannel = ManagedChannelBuilder.forAddress(this.name, this.port).usePlaintext().build();
+		this.nettyTransportOptions = nettyTransportOptions;
+		// With several backends the target is resolved by the static resolver to all of them
+		String target = backends.isEmpty() ? null : StaticNameResolverProvider.SCHEME + ":///" + this.name;
+		ManagedChannelBuilder<?> managedChannelBuilder;
+		if (nettyTransportOptions == null) {
+			this.eventLoopGroup = null;
+			managedChannelBuilder = target == null ? ManagedChannelBuilder.forAddress(this.name, this.port) : ManagedChannelBuilder.forTarget(target);
+		} else {
+			this.eventLoopGroup = nettyTransportOptions.newEventLoopGroup(nettyTransportOptions.getWorkerThreads(), "grpc-client");
+			NettyChannelBuilder nettyChannelBuilder = target == null ? NettyChannelBuilder.forAddress(this.name, this.port) : NettyChannelBuilder.forTarget(target);
+			managedChannelBuilder = configureNettyChannelBuilder(nettyChannelBuilder, nettyTransportOptions, eventLoopGroup);
+		}
+		this.backends = backends;
+		if (target != null) {
+			useNameResolver(managedChannelBuilder, new StaticNameResolverProvider(backends))
+					.defaultServiceConfig(serviceConfig != null ? serviceConfig : GreeterServiceConfig.create(GreeterServiceConfig.LEAST_REQUEST, 3, 10))
+					.enableRetry();
+		}
+		this.rpcMetrics = rpcMetrics;
+		if (rpcMetrics != null) {
+			managedChannelBuilder.intercept(new MetricsClientInterceptor(rpcMetrics));
+		}
+		this.managedChannel = managedChannelBuilder.usePlaintext().build();
 
 		// Create a new blocking-style stub for the Greeter service
 		greeterBlockingStub = GreeterGrpc.newBlockingStub(managedChannel);
@@ -80,6 +122,48 @@ public class GRpcClientLauncher {
 		greeterFutureStub = GreeterGrpc.newStub(managedChannel);
 	}
 
+	/**
+	 * Applies the transport settings to a Netty channel builder and runs it on the given event loops.
+	 *
+	 * @param nettyChannelBuilder   The channel builder for the target.
+	 * @param nettyTransportOptions The Netty transport settings.
+	 * @param eventLoopGroup        The event loops serving the connections.
+	 *
+	 * @return The channel builder.
+	 */
+	private static NettyChannelBuilder configureNettyChannelBuilder(NettyChannelBuilder nettyChannelBuilder, NettyTransportOptions nettyTransportOptions, EventLoopGroup eventLoopGroup) {
+		nettyChannelBuilder.channelType(nettyTransportOptions.channelType())
+				.eventLoopGroup(eventLoopGroup)
+				.withOption(ChannelOption.ALLOCATOR, nettyTransportOptions.allocator());
+		if (nettyTransportOptions.getFlowControlWindow() > 0) {
+			nettyChannelBuilder.flowControlWindow(nettyTransportOptions.getFlowControlWindow());
+		}
+		if (nettyTransportOptions.getMaxInboundMessageSize() > 0) {
+			nettyChannelBuilder.maxInboundMessageSize(nettyTransportOptions.getMaxInboundMessageSize());
+		}
+		if (nettyTransportOptions.getKeepAliveTimeSeconds() > 0) {
+			nettyChannelBuilder.keepAliveTime(nettyTransportOptions.getKeepAliveTimeSeconds(), TimeUnit.SECONDS);
+		}
+		if (nettyTransportOptions.getKeepAliveTimeoutSeconds() > 0) {
+			nettyChannelBuilder.keepAliveTimeout(nettyTransportOptions.getKeepAliveTimeoutSeconds(), TimeUnit.SECONDS);
+		}
+		return nettyChannelBuilder;
+	}
+
+	/**
+	 * Makes the channel resolve its target with the given provider only, instead of the providers of the global registry.
+	 *
+	 * @param managedChannelBuilder The channel builder.
+	 * @param nameResolverProvider  The provider resolving the target.
+	 *
+	 * @return The channel builder.
+	 */
+	@SuppressWarnings("deprecation")
+	private static ManagedChannelBuilder<?> useNameResolver(ManagedChannelBuilder<?> managedChannelBuilder, NameResolverProvider nameResolverProvider) {
+		// Deprecated in favour of the global registry, which would make the fixed backends of this channel visible to every other channel
+		return managedChannelBuilder.nameResolverFactory(nameResolverProvider);
+	}
+
 	/**
 	 * Waits for the channel to terminate within the given time limit.
 	 *
@@ -91,14 +175,89 @@ public class GRpcClientLauncher {
 	public void awaitTermination(int time, TimeUnit unit) throws InterruptedException {
 		// Waits for the channel to terminate within the given time limit.
 		managedChannel.awaitTermination(time, unit);
+
+		// The event loops are only released once no connection uses them anymore
+		if (eventLoopGroup != null && managedChannel.isTerminated()) {
+			eventLoopGroup.shutdownGracefully();
+		}
+	}
+
+	/**
+	 * Creates a coalescer that gathers SayHello calls on this channel into SayHelloBatch calls.
+	 *
+	 * @param maxBatchSize The maximum number of requests in a batch.
+	 * @param maxDelay     How long the first request of a batch may wait for others.
+	 * @param unit         The time unit of maxDelay.
+	 *
+	 * @return The coalescer, to be closed once no more calls are sent.
+	 */
+	public SayHelloCoalescer newSayHelloCoalescer(int maxBatchSize, long maxDelay, TimeUnit unit) {
+		return new SayHelloCoalescer(greeterFutureStub, maxBatchSize, maxDelay, unit);
+	}
+
+	/**
+	 * Calls the server streaming rpc with manual flow control.
+	 * At most {@code window} replies are requested ahead of the consumer, the next one only after a reply has been consumed,
+	 * so a slow consumer stalls the server instead of letting replies pile up in memory.
+	 *
+	 * @param request  The request to send.
+	 * @param window   The number of replies requested ahead of the consumer.
+	 * @param consumer Consumes every reply on the calling gRPC thread.
+	 *
+	 * @return A future completed with the number of replies once the server completes the stream.
+	 */
+	public CompletableFuture<Integer> sayHello3FlowControlled(Hello.HelloRequest request, int window, Consumer<Hello.HelloReply> consumer) {
+		CompletableFuture<Integer> done = new CompletableFuture<>();
+		greeterFutureStub.sayHello3(request, new ClientResponseObserver<Hello.HelloRequest, Hello.HelloReply>() {
+			private ClientCallStreamObserver<Hello.HelloRequest> requestStream;
+			private int count = 0;
+
+			@Override
+			public void beforeStart(ClientCallStreamObserver<Hello.HelloRequest> requestStream) {
+				this.requestStream = requestStream;
+				requestStream.disableAutoRequestWithInitial(window);
+			}
+
+			@Override
+			public void onNext(Hello.HelloReply helloReply) {
+				consumer.accept(helloReply);
+				count++;
+				requestStream.request(1);
+			}
+
+			@Override
+			public void onError(Throwable throwable) {
+				done.completeExceptionally(throwable);
+			}
+
+			@Override
+			public void onCompleted() {
+				done.complete(count);
+			}
+		});
+		return done;
 	}
 
 	/**
 	 * Entry point of the application.
+	 * Without arguments a few calls of every type are sent, otherwise the arguments configure a {@link GRpcLoadGenerator},
+	 * e.g. {@code shape=unary rps=5000 duration=60 warmup=10} or {@code shape=bidi_streaming concurrency=64}.
 	 *
 	 * @param args The command line arguments.
 	 */
-	public static void main(String[] args) throws ExecutionException, InterruptedException {
+	public static void main(String[] args) throws ExecutionException, InterruptedException, IOException {
+		if (args.length > 0) {
+			GRpcLoadGenerator loadGenerator = GRpcLoadGenerator.fromArgs(args);
+			try {
+				loadGenerator.run();
+			} finally {
+				loadGenerator.close();
+			}
+			loadGenerator.getClient().getManagedChannel().shutdown();
+			loadGenerator.getClient().awaitTermination(5, TimeUnit.SECONDS);
+			return;
+		}
+
 		// Simple RPC
 		log.info("Simple RPC");
 		GRpcClientLauncher client = new GRpcClientLauncher(50051);
@@ -108,6 +267,20 @@ public class GRpcClientLauncher {
 
 		TimeUnit.SECONDS.sleep(1);
 
+		// Simple RPCs coalesced into batches
+		log.info("Coalesced simple RPC");
+		try (SayHelloCoalescer sayHelloCoalescer = client.newSayHelloCoalescer(8, 5, TimeUnit.MILLISECONDS)) {
+			List<CompletableFuture<Hello.HelloReply>> replies = new ArrayList<>();
+			for (int i = 0; i < 10; ++i) {
+				replies.add(sayHelloCoalescer.sayHello(Hello.HelloRequest.newBuilder().setName("Hello#" + i).setSex("man").build()));
+			}
+			for (CompletableFuture<Hello.HelloReply> coalescedReply : replies) {
+				log.info("Greeting: " + coalescedReply.get().getMessage());
+			}
+		}
+
+		TimeUnit.SECONDS.sleep(1);
+
 		// Client streaming rpc
 		log.info("Client streaming rpc");
 		StreamObserver<Hello.HelloReply> helloReplyStreamObserver = new StreamObserver<Hello.HelloReply>() {
@@ -145,6 +318,14 @@ public class GRpcClientLauncher {
 
 		TimeUnit.SECONDS.sleep(1);
 
+		// Server streaming rpc with manual flow control
+		log.info("Server streaming rpc with flow control");
+		Hello.HelloRequest streamRequest = Hello.HelloRequest.newBuilder().setName("hello").setSex("man").setReplyCount(20).build();
+		int received = client.sayHello3FlowControlled(streamRequest, 4, helloReply -> log.info("Greeting: " + helloReply.getMessage())).get();
+		log.info("Client receive " + received + " messages");
+
+		TimeUnit.SECONDS.sleep(1);
+
 		// Bi-directional rpc
 		log.info("Bi-directional rpc");
 		StreamObserver<Hello.HelloReply> helloReplyStreamObserver2 = new StreamObserver<Hello.HelloReply>() {
@@ -0,0 +1,327 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import io.grpc.Hello;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generator that drives the Greeter service through the asynchronous stub of a {@link GRpcClientLauncher}.
+ * In open-loop mode calls are issued at a fixed target rate regardless of how fast the server answers, and latency is
+ * measured from the intended start time of each call so that coordinated omission is corrected.
+ * In closed-loop mode a fixed number of calls are kept in flight, the recorded latencies are corrected afterward with
+ * the median service time observed during warmup as the expected interval.
+ * Only completed calls are recorded, calls rejected with {@code RESOURCE_EXHAUSTED} are counted separately so that
+ * overdriving a server with admission control shows the latency of the admitted calls.
+ */
+@Slf4j
+@Getter
+public class GRpcLoadGenerator {
+	private static final Hello.HelloRequest REQUEST = Hello.HelloRequest.newBuilder().setName("hello").setSex("man").build();
+
+	/**
+	 * The call shapes of the Greeter service.
+	 */
+	public enum RpcShape {
+		UNARY, CLIENT_STREAMING, SERVER_STREAMING, BIDI_STREAMING, COALESCED_UNARY
+	}
+
+	private final GRpcClientLauncher client;
+	private final RpcShape rpcShape;
+	private final int targetRps;
+	private final int concurrency;
+	private final long durationNanos;
+	private final long warmupNanos;
+	private final int streamLength;
+	private final Hello.HelloRequest streamRequest;
+	private final SayHelloCoalescer sayHelloCoalescer;
+	private final MetricsHttpServer metricsHttpServer;
+
+	// Latency measured from the intended start, and from the moment the call was actually issued
+	private final Recorder responseTimeRecorder = new Recorder(3);
+	private final Recorder serviceTimeRecorder = new Recorder(3);
+	private final Recorder warmupRecorder = new Recorder(3);
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final AtomicLong outstanding = new AtomicLong();
+	// The histograms of the last run
+	private Histogram serviceTime;
+	private Histogram responseTime;
+
+	/**
+	 * Constructs a new load generator.
+	 *
+	 * @param client            The client whose stub is used to issue calls.
+	 * @param rpcShape          The call shape to drive.
+	 * @param targetRps         The target rate of calls per second, a positive value selects the open-loop mode.
+	 * @param concurrency       The number of calls kept in flight in closed-loop mode.
+	 * @param duration          The length of the measurement, in seconds.
+	 * @param warmup            The length of the warmup before the measurement, in seconds.
+	 * @param streamLength      The number of messages per call for the streaming shapes, sent by the client or replied by the server.
+	 * @param batchSize         The maximum number of calls per batch for the coalesced shape.
+	 * @param batchDelayMicros  How long a call may wait for a batch to fill for the coalesced shape, in microseconds.
+	 * @param metricsHttpServer The endpoint serving the client metrics, stopped by {@link #close()}, none if null.
+	 */
+	@Builder
+	public GRpcLoadGenerator(GRpcClientLauncher client, RpcShape rpcShape, int targetRps, int concurrency, int duration, int warmup, int streamLength, int batchSize, int batchDelayMicros, MetricsHttpServer metricsHttpServer) {
+		this.client = client;
+		this.rpcShape = rpcShape == null ? RpcShape.UNARY : rpcShape;
+		this.targetRps = targetRps;
+		this.concurrency = Math.max(1, concurrency);
+		this.durationNanos = TimeUnit.SECONDS.toNanos(duration > 0 ? duration : 30);
+		this.warmupNanos = TimeUnit.SECONDS.toNanos(Math.max(0, warmup));
+		this.streamLength = streamLength > 0 ? streamLength : 10;
+		this.streamRequest = REQUEST.toBuilder().setReplyCount(this.streamLength).build();
+		this.sayHelloCoalescer = this.rpcShape == RpcShape.COALESCED_UNARY ? client.newSayHelloCoalescer(batchSize > 0 ? batchSize : 32, batchDelayMicros > 0 ? batchDelayMicros : 500, TimeUnit.MICROSECONDS) : null;
+		this.metricsHttpServer = metricsHttpServer;
+	}
+
+	/**
+	 * Creates a load generator from {@code key=value} command line arguments.
+	 * Supported keys are host, port, eventLoops, metricsPort, shape, rps, concurrency, duration, warmup, streamLength, batchSize and
+	 * batchDelayMicros, a leading "--" is ignored.
+	 *
+	 * @param args The command line arguments.
+	 *
+	 * @return The configured load generator.
+	 *
+	 * @throws IOException If the metrics port could not be bound.
+	 */
+	public static GRpcLoadGenerator fromArgs(String[] args) throws IOException {
+		Map<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			String option = arg.startsWith("--") ? arg.substring(2) : arg;
+			int separator = option.indexOf('=');
+			if (separator <= 0) {
+				throw new IllegalArgumentException("Expected key=value but got: " + arg);
+			}
+			options.put(option.substring(0, separator), option.substring(separator + 1));
+		}
+
+		// eventLoops switches to the Netty transport with that many event loop threads
+		NettyTransportOptions nettyTransportOptions = options.containsKey("eventLoops") ? NettyTransportOptions.builder().workerThreads(Integer.parseInt(options.get("eventLoops"))).build() : null;
+		// metricsPort serves the client side rpc metrics while the load runs
+		RpcMetrics rpcMetrics = options.containsKey("metricsPort") ? new RpcMetrics("client") : null;
+		MetricsHttpServer metricsHttpServer = null;
+		if (rpcMetrics != null) {
+			metricsHttpServer = new MetricsHttpServer(Integer.parseInt(options.get("metricsPort")), rpcMetrics);
+			metricsHttpServer.start();
+		}
+		GRpcClientLauncher client = GRpcClientLauncher.builder()
+				.name(options.getOrDefault("host", "127.0.0.1"))
+				.port(Integer.parseInt(options.getOrDefault("port", "50051")))
+				.nettyTransportOptions(nettyTransportOptions)
+				.rpcMetrics(rpcMetrics)
+				.build();
+		return GRpcLoadGenerator.builder()
+				.client(client)
+				.rpcShape(RpcShape.valueOf(options.getOrDefault("shape", "unary").toUpperCase(Locale.ROOT)))
+				.targetRps(Integer.parseInt(options.getOrDefault("rps", "0")))
+				.concurrency(Integer.parseInt(options.getOrDefault("concurrency", "16")))
+				.duration(Integer.parseInt(options.getOrDefault("duration", "30")))
+				.warmup(Integer.parseInt(options.getOrDefault("warmup", "5")))
+				.streamLength(Integer.parseInt(options.getOrDefault("streamLength", "10")))
+				.batchSize(Integer.parseInt(options.getOrDefault("batchSize", "32")))
+				.batchDelayMicros(Integer.parseInt(options.getOrDefault("batchDelayMicros", "500")))
+				.metricsHttpServer(metricsHttpServer)
+				.build();
+	}
+
+	/**
+	 * Runs the warmup and the measurement, then logs the latency percentiles.
+	 *
+	 * @throws InterruptedException If the current thread is interrupted while waiting.
+	 */
+	public void run() throws InterruptedException {
+		log.info("Load " + rpcShape + " " + (targetRps > 0 ? "open loop at " + targetRps + " rps" : "closed loop with " + concurrency + " calls in flight") + " for " + TimeUnit.NANOSECONDS.toSeconds(durationNanos) + "s after " + TimeUnit.NANOSECONDS.toSeconds(warmupNanos) + "s warmup");
+		long start = System.nanoTime();
+		if (targetRps > 0) {
+			runOpenLoop(start);
+		} else {
+			runClosedLoop(start);
+		}
+		long elapsed = System.nanoTime() - start - warmupNanos;
+		if (sayHelloCoalescer != null) {
+			sayHelloCoalescer.close();
+		}
+
+		// Let the calls still in flight finish so their latency is not lost
+		long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+		while (outstanding.get() > 0 && System.nanoTime() < drainDeadline) {
+			TimeUnit.MILLISECONDS.sleep(10);
+		}
+
+		serviceTime = serviceTimeRecorder.getIntervalHistogram();
+		responseTime = responseTimeRecorder.getIntervalHistogram();
+		if (targetRps <= 0) {
+			// A closed loop waits for each call before issuing the next, so slow calls hide the calls that were never sent
+			Histogram warmupTime = warmupRecorder.getIntervalHistogram();
+			long expectedInterval = warmupTime.getTotalCount() > 0 ? warmupTime.getValueAtPercentile(50) : serviceTime.getValueAtPercentile(50);
+			responseTime = serviceTime.copyCorrectedForCoordinatedOmission(expectedInterval);
+		}
+		log.info("Completed " + serviceTime.getTotalCount() + " calls, " + rejected.sum() + " rejected, " + failures.sum() + " failed, " + String.format("%.1f", serviceTime.getTotalCount() * 1e9 / elapsed) + " calls/s");
+		report("Response time (corrected)", responseTime);
+		report("Service time (uncorrected)", serviceTime);
+	}
+
+	/**
+	 * Stops the metrics endpoint, whose HTTP dispatcher thread would otherwise keep the JVM running after the load.
+	 */
+	public void close() {
+		if (metricsHttpServer != null) {
+			metricsHttpServer.stop();
+		}
+	}
+
+	/**
+	 * Issues calls at the target rate from a single dispatcher thread, the asynchronous stub never blocks it.
+	 *
+	 * @param start The start of the run in {@link System#nanoTime()} units.
+	 */
+	private void runOpenLoop(long start) {
+		long interval = TimeUnit.SECONDS.toNanos(1) / targetRps;
+		long measureStart = start + warmupNanos;
+		long end = measureStart + durationNanos;
+		for (long i = 0; ; ++i) {
+			long intendedStart = start + i * interval;
+			if (intendedStart >= end) {
+				break;
+			}
+			long wait = intendedStart - System.nanoTime();
+			if (wait > 0) {
+				LockSupport.parkNanos(wait);
+			}
+			issue(intendedStart, intendedStart >= measureStart, null);
+		}
+	}
+
+	/**
+	 * Keeps {@code concurrency} calls in flight, each completion issues the next call until the run is over.
+	 *
+	 * @param start The start of the run in {@link System#nanoTime()} units.
+	 *
+	 * @throws InterruptedException If the current thread is interrupted while waiting.
+	 */
+	private void runClosedLoop(long start) throws InterruptedException {
+		long measureStart = start + warmupNanos;
+		long end = measureStart + durationNanos;
+		CountDownLatch done = new CountDownLatch(concurrency);
+		for (int i = 0; i < concurrency; ++i) {
+			issueNext(measureStart, end, done);
+		}
+		done.await();
+	}
+
+	private void issueNext(long measureStart, long end, CountDownLatch done) {
+		long now = System.nanoTime();
+		if (now >= end) {
+			done.countDown();
+			return;
+		}
+		issue(now, now >= measureStart, () -> issueNext(measureStart, end, done));
+	}
+
+	/**
+	 * Issues one call of the configured shape.
+	 *
+	 * @param intendedStart The time the call should have started at, in {@link System#nanoTime()} units.
+	 * @param measured      Whether the call belongs to the measurement rather than to the warmup.
+	 * @param next          Run once the call has finished, may be null.
+	 */
+	private void issue(long intendedStart, boolean measured, Runnable next) {
+		long actualStart = System.nanoTime();
+		outstanding.incrementAndGet();
+		StreamObserver<Hello.HelloReply> responseObserver = new StreamObserver<Hello.HelloReply>() {
+			@Override
+			public void onNext(Hello.HelloReply helloReply) {
+			}
+
+			@Override
+			public void onError(Throwable throwable) {
+				// Calls shed by the server's admission control are counted apart from real failures
+				if (measured && Status.fromThrowable(throwable).getCode() == Status.Code.RESOURCE_EXHAUSTED) {
+					rejected.increment();
+				} else if (measured) {
+					failures.increment();
+				}
+				finish();
+			}
+
+			@Override
+			public void onCompleted() {
+				long now = System.nanoTime();
+				if (measured) {
+					responseTimeRecorder.recordValue(now - intendedStart);
+					serviceTimeRecorder.recordValue(now - actualStart);
+				} else {
+					warmupRecorder.recordValue(now - actualStart);
+				}
+				finish();
+			}
+
+			private void finish() {
+				outstanding.decrementAndGet();
+				if (next != null) {
+					next.run();
+				}
+			}
+		};
+
+		switch (rpcShape) {
+			case UNARY -> client.getGreeterFutureStub().sayHello(REQUEST, responseObserver);
+			case CLIENT_STREAMING -> {
+				StreamObserver<Hello.HelloRequest> requestObserver = client.getGreeterFutureStub().sayHello2(responseObserver);
+				for (int i = 0; i < streamLength; ++i) {
+					requestObserver.onNext(REQUEST);
+				}
+				requestObserver.onCompleted();
+			}
+			case SERVER_STREAMING -> client.getGreeterFutureStub().sayHello3(streamRequest, responseObserver);
+			case BIDI_STREAMING -> {
+				StreamObserver<Hello.HelloRequest> requestObserver = client.getGreeterFutureStub().sayHello4(responseObserver);
+				for (int i = 0; i < streamLength; ++i) {
+					requestObserver.onNext(REQUEST);
+				}
+				requestObserver.onCompleted();
+			}
+			case COALESCED_UNARY -> sayHelloCoalescer.sayHello(REQUEST).whenComplete((helloReply, throwable) -> {
+				if (throwable == null) {
+					responseObserver.onCompleted();
+				} else {
+					responseObserver.onError(throwable);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Logs the percentiles of a latency histogram in microseconds.
+	 *
+	 * @param title     The title of the histogram.
+	 * @param histogram The histogram holding latencies in nanoseconds.
+	 */
+	private static void report(String title, Histogram histogram) {
+		log.info(title + ": p50=" + histogram.getValueAtPercentile(50) / 1000
+				+ "us p90=" + histogram.getValueAtPercentile(90) / 1000
+				+ "us p99=" + histogram.getValueAtPercentile(99) / 1000
+				+ "us p99.9=" + histogram.getValueAtPercentile(99.9) / 1000
+				+ "us max=" + histogram.getMaxValue() / 1000 + "us");
+	}
+}
@@ -3,13 +3,35 @@ package code;
 // Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
 // Author: NoCodeNoLife-cloud
 // stay hungry，stay foolish
+import com.google.common.util.concurrent.MoreExecutors;
 import io.grpc.*;
+import io.grpc.health.v1.HealthCheckResponse;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.netty.NettyServerBuilder;
+import io.grpc.protobuf.services.HealthStatusManager;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollChannelOption;
+import lombok.Builder;
 import lombok.Getter;
+import lombok.Singular;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 
 /**
  * This class represents a gRPC server. It initializes a server instance and provides methods to start and await termination.
@@ -19,20 +41,244 @@ import java.util.concurrent.TimeUnit;
 public class GRpcServerLauncher {
 	private final Server server;
 	private final int port;
+	private final ExecutorType executorType;
+	private final ExecutorService executorService;
+	private final Set<String> directMethods;
+	private final NettyTransportOptions nettyTransportOptions;
+	private final EventLoopGroup bossEventLoopGroup;
+	private final EventLoopGroup workerEventLoopGroup;
+	private final RpcMetrics rpcMetrics;
+	private final ServerServiceDefinition serviceDefinition;
+	private final HealthStatusManager healthStatusManager;
+	private final int warmupIterations;
+	private final long drainTimeoutMillis;
+	private final InFlightCallInterceptor inFlightCallInterceptor;
+
+	/**
+	 * The executor that runs the service handlers.
+	 */
+	public enum ExecutorType {
+		/**
+		 * gRPC's default unbounded cached thread pool.
+		 */
+		DEFAULT,
+		/**
+		 * A new virtual thread per task, requires Java 21 or newer.
+		 */
+		VIRTUAL_THREADS,
+		/**
+		 * Handlers of the direct methods run on the transport threads, the other methods and the health service on gRPC's default executor.
+		 */
+		DIRECT,
+		/**
+		 * A work-stealing pool with a fixed number of workers.
+		 */
+		FORK_JOIN
+	}
 
 	public GRpcServerLauncher(int port, BindableService bindableService) {
+		this(port, bindableService, ExecutorType.DEFAULT, 0, Set.of(), null, List.of(), null, 0, 0);
+	}
+
+	/**
+	 * Constructs a new server with the given handler executor and transport.
+	 *
+	 * @param port                  The port number to listen on.
+	 * @param bindableService       The service to serve.
+	 * @param executorType          The executor that runs the service handlers, gRPC's default executor if null.
+	 * @param forkJoinParallelism   The number of workers of the {@link ExecutorType#FORK_JOIN} pool, the number of processors if not positive.
+	 * @param directMethods         The full names of the methods that never block, run on the transport threads by {@link ExecutorType#DIRECT}, sayHello and sayHelloBatch if empty.
+	 * @param nettyTransportOptions The Netty transport settings, the default transport if null.
+	 * @param interceptors          The interceptors applied to every call, the last one added runs first.
+	 * @param rpcMetrics            The metrics recording every call ahead of the other interceptors, none if null.
+	 * @param warmupIterations      The number of warmup calls per Greeter method made in process before the server reports serving, no warmup if not positive.
+	 * @param drainTimeoutMillis    How long {@link #stopNow()} waits for in-flight calls before cancelling them, 30 seconds if not positive.
+	 */
+	@Builder
+	public GRpcServerLauncher(int port, BindableService bindableService, ExecutorType executorType, int forkJoinParallelism, @Singular Set<String> directMethods, NettyTransportOptions nettyTransportOptions, @Singular List<ServerInterceptor> interceptors, RpcMetrics rpcMetrics, int warmupIterations, long drainTimeoutMillis) {
 		// Initialize the server instance with the given port and service definition
 		this.port = port;
-		this.server = ServerBuilder.forPort(this.port).addService(bindableService).build();
+		this.executorType = executorType == null ? ExecutorType.DEFAULT : executorType;
+		this.nettyTransportOptions = nettyTransportOptions;
+		ServerBuilder<?> serverBuilder;
+		if (nettyTransportOptions == null) {
+			this.bossEventLoopGroup = null;
+			this.workerEventLoopGroup = null;
+			serverBuilder = ServerBuilder.forPort(this.port);
+		} else {
+			this.bossEventLoopGroup = nettyTransportOptions.newEventLoopGroup(nettyTransportOptions.getBossThreads(), "grpc-server-boss");
+			this.workerEventLoopGroup = nettyTransportOptions.newEventLoopGroup(nettyTransportOptions.getWorkerThreads(), "grpc-server-worker");
+			serverBuilder = newNettyServerBuilder(this.port, nettyTransportOptions, bossEventLoopGroup, workerEventLoopGroup);
+		}
+		this.serviceDefinition = bindableService.bindService();
+		List<ServerInterceptor> serviceInterceptors = new ArrayList<>(interceptors);
+		this.rpcMetrics = rpcMetrics;
+		if (rpcMetrics != null) {
+			// Added last so it runs first and also sees the calls answered or rejected by the other interceptors
+			MetricsServerInterceptor metricsServerInterceptor = new MetricsServerInterceptor(rpcMetrics);
+			metricsServerInterceptor.registerService(serviceDefinition);
+			serviceInterceptors.add(metricsServerInterceptor);
+			serverBuilder.addStreamTracerFactory(metricsServerInterceptor.getStreamTracerFactory());
+		}
+		// Outermost, so that a call counts as in flight until it is closed however it ends
+		this.inFlightCallInterceptor = new InFlightCallInterceptor();
+		serviceInterceptors.add(inFlightCallInterceptor);
+		// Intercept the service only, a concurrency limit must not shed the health checks
+		serverBuilder.addService(ServerInterceptors.intercept(serviceDefinition, serviceInterceptors));
+
+		// Load balancers and orchestrators only see the server as serving once the warmup in start() has finished
+		this.healthStatusManager = new HealthStatusManager();
+		healthStatusManager.setStatus(HealthStatusManager.SERVICE_NAME_ALL_SERVICES, HealthCheckResponse.ServingStatus.NOT_SERVING);
+		healthStatusManager.setStatus(serviceDefinition.getServiceDescriptor().getName(), HealthCheckResponse.ServingStatus.NOT_SERVING);
+		serverBuilder.addService(healthStatusManager.getHealthService());
+		this.warmupIterations = warmupIterations;
+		this.drainTimeoutMillis = drainTimeoutMillis > 0 ? drainTimeoutMillis : TimeUnit.SECONDS.toMillis(30);
+
+		// Pick the executor that runs the service handlers
+		switch (this.executorType) {
+			case VIRTUAL_THREADS -> this.executorService = newVirtualThreadPerTaskExecutor();
+			case FORK_JOIN -> {
+				int parallelism = forkJoinParallelism > 0 ? forkJoinParallelism : Runtime.getRuntime().availableProcessors();
+				// Async mode keeps the queued callbacks in FIFO order
+				this.executorService = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+			}
+			default -> this.executorService = null;
+		}
+		this.directMethods = directMethods.isEmpty() ? Set.of(GreeterGrpc.getSayHelloMethod().getFullMethodName(), GreeterGrpc.getSayHelloBatchMethod().getFullMethodName()) : Set.copyOf(directMethods);
+		if (this.executorType == ExecutorType.DIRECT) {
+			serverBuilder.callExecutor(this::directCallExecutor);
+		} else if (this.executorService != null) {
+			serverBuilder.executor(this.executorService);
+		}
+		this.server = serverBuilder.build();
 	}
 
 	/**
-	 * A method to start the server.
+	 * Creates a Netty server builder on the given event loops with the transport settings applied.
+	 *
+	 * @param port                  The port number to listen on.
+	 * @param nettyTransportOptions The Netty transport settings.
+	 * @param bossEventLoopGroup    The event loops accepting connections.
+	 * @param workerEventLoopGroup  The event loops serving connections.
+	 *
+	 * @return The server builder.
+	 */
+	private static NettyServerBuilder newNettyServerBuilder(int port, NettyTransportOptions nettyTransportOptions, EventLoopGroup bossEventLoopGroup, EventLoopGroup workerEventLoopGroup) {
+		NettyServerBuilder nettyServerBuilder = NettyServerBuilder.forPort(port)
+				.channelType(nettyTransportOptions.serverChannelType())
+				.bossEventLoopGroup(bossEventLoopGroup)
+				.workerEventLoopGroup(workerEventLoopGroup)
+				.withOption(ChannelOption.ALLOCATOR, nettyTransportOptions.allocator())
+				.withChildOption(ChannelOption.ALLOCATOR, nettyTransportOptions.allocator());
+		if (nettyTransportOptions.isReusePort() && nettyTransportOptions.useEpoll()) {
+			nettyServerBuilder.withOption(EpollChannelOption.SO_REUSEPORT, true);
+		}
+		if (nettyTransportOptions.getFlowControlWindow() > 0) {
+			nettyServerBuilder.flowControlWindow(nettyTransportOptions.getFlowControlWindow());
+		}
+		if (nettyTransportOptions.getMaxConcurrentCallsPerConnection() > 0) {
+			nettyServerBuilder.maxConcurrentCallsPerConnection(nettyTransportOptions.getMaxConcurrentCallsPerConnection());
+		}
+		if (nettyTransportOptions.getMaxInboundMessageSize() > 0) {
+			nettyServerBuilder.maxInboundMessageSize(nettyTransportOptions.getMaxInboundMessageSize());
+		}
+		if (nettyTransportOptions.getKeepAliveTimeSeconds() > 0) {
+			nettyServerBuilder.keepAliveTime(nettyTransportOptions.getKeepAliveTimeSeconds(), TimeUnit.SECONDS);
+		}
+		if (nettyTransportOptions.getKeepAliveTimeoutSeconds() > 0) {
+			nettyServerBuilder.keepAliveTimeout(nettyTransportOptions.getKeepAliveTimeoutSeconds(), TimeUnit.SECONDS);
+		}
+		if (nettyTransportOptions.getPermitKeepAliveTimeSeconds() > 0) {
+			nettyServerBuilder.permitKeepAliveTime(nettyTransportOptions.getPermitKeepAliveTimeSeconds(), TimeUnit.SECONDS);
+		}
+		return nettyServerBuilder;
+	}
+
+	/**
+	 * Picks the executor of a call for {@link ExecutorType#DIRECT}, the calling transport thread for the direct methods.
+	 *
+	 * @param call     The call about to be dispatched.
+	 * @param metadata The headers of the call.
+	 *
+	 * @return The direct executor, or null to run the call on the server's executor.
+	 */
+	private <ReqT, RespT> Executor directCallExecutor(ServerCall<ReqT, RespT> call, Metadata metadata) {
+		return directMethods.contains(call.getMethodDescriptor().getFullMethodName()) ? MoreExecutors.directExecutor() : null;
+	}
+
+	/**
+	 * Creates an executor that starts a new virtual thread for each task.
+	 * It is looked up reflectively so the project still runs on Java versions without virtual threads.
+	 *
+	 * @return The executor.
+	 */
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (NoSuchMethodException e) {
+			throw new UnsupportedOperationException("Virtual threads require Java 21 or newer", e);
+		} catch (IllegalAccessException | InvocationTargetException e) {
+			throw new IllegalStateException("Failed to create the virtual thread executor", e);
+		}
+	}
+
+	/**
+	 * A method to start the server. The server is bound right away but reports NOT_SERVING through the health service
+	 * until the optional warmup has run, so that no real traffic hits cold handlers.
 	 *
 	 * @return The server instance that has been started
+	 *
+	 * @throws IOException If the server could not be bound.
 	 */
 	public Server start() throws IOException {
-		return server.start();
+		server.start();
+		if (warmupIterations > 0) {
+			warmUp();
+		}
+		healthStatusManager.setStatus(HealthStatusManager.SERVICE_NAME_ALL_SERVICES, HealthCheckResponse.ServingStatus.SERVING);
+		healthStatusManager.setStatus(serviceDefinition.getServiceDescriptor().getName(), HealthCheckResponse.ServingStatus.SERVING);
+		return server;
+	}
+
+	/**
+	 * Drives the Greeter methods through an in-process server sharing the service and the handler executor.
+	 * The interceptors are left out so that the warmup neither fills the response cache nor shows up in the metrics.
+	 * The warmup calls are marked so that the streaming handlers skip their per-message logging for them.
+	 * A failing warmup is logged and does not keep the server from serving.
+	 */
+	private void warmUp() {
+		if (!GreeterGrpc.SERVICE_NAME.equals(serviceDefinition.getServiceDescriptor().getName())) {
+			log.warn("Warmup skipped, it only drives the Greeter service");
+			return;
+		}
+		String serverName = InProcessServerBuilder.generateName();
+		InProcessServerBuilder inProcessServerBuilder = InProcessServerBuilder.forName(serverName).addService(ServerInterceptors.intercept(serviceDefinition, GreeterWarmup.callMarker()));
+		if (executorType == ExecutorType.DIRECT) {
+			inProcessServerBuilder.callExecutor(this::directCallExecutor);
+		} else if (executorService != null) {
+			inProcessServerBuilder.executor(executorService);
+		}
+		Server inProcessServer = null;
+		ManagedChannel inProcessChannel = null;
+		long start = System.nanoTime();
+		try {
+			inProcessServer = inProcessServerBuilder.build().start();
+			inProcessChannel = InProcessChannelBuilder.forName(serverName).build();
+			GreeterWarmup.run(inProcessChannel, warmupIterations);
+			log.info("Warmup finished in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+		} catch (IOException | StatusRuntimeException e) {
+			log.warn("Warmup failed: " + e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			log.warn("Warmup interrupted");
+		} finally {
+			if (inProcessChannel != null) {
+				inProcessChannel.shutdownNow();
+			}
+			if (inProcessServer != null) {
+				inProcessServer.shutdownNow();
+			}
+		}
 	}
 
 	/**
@@ -45,6 +291,7 @@ public class GRpcServerLauncher {
 	 */
 	public void awaitTermination(int time, TimeUnit unit) throws InterruptedException {
 		server.awaitTermination(time, unit);
+		releaseResources();
 	}
 
 	/**
@@ -55,38 +302,122 @@ public class GRpcServerLauncher {
 	public void blockUntilShutdown() throws InterruptedException {
 		if (server != null) {
 			server.awaitTermination();
+			releaseResources();
 		}
 	}
 
 	/**
-	 * A description of the entire Java function.
+	 * Shuts down the handler executor and the event loops once the server has terminated and no call can use them anymore.
+	 */
+	private void releaseResources() {
+		if (!server.isTerminated()) {
+			return;
+		}
+		if (executorService != null) {
+			executorService.shutdown();
+		}
+		if (bossEventLoopGroup != null) {
+			bossEventLoopGroup.shutdownGracefully();
+			workerEventLoopGroup.shutdownGracefully();
+		}
+	}
+
+	/**
+	 * Drains the server: reports NOT_SERVING so that load balancers move new calls elsewhere, stops accepting new calls,
+	 * waits up to the drain timeout for the in-flight Greeter calls and streams to finish, then cancels whatever is still
+	 * running. Only the Greeter calls are waited for, health watch streams never end on their own and are cancelled as
+	 * soon as the Greeter calls are done.
 	 */
 	public void stopNow() {
-		if (server != null) {
-			server.shutdown();
+		if (server == null) {
+			return;
+		}
+		healthStatusManager.enterTerminalState();
+		server.shutdown();
+		try {
+			if (!inFlightCallInterceptor.awaitIdle(drainTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				log.warn(inFlightCallInterceptor.getInFlight() + " calls still running after " + drainTimeoutMillis + " ms, cancelling them");
+			}
+			server.shutdownNow();
+			server.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			server.shutdownNow();
+			Thread.currentThread().interrupt();
 		}
+		releaseResources();
 	}
 
 	// Add the implemented service class here
-	private static class GreeterServiceImpl extends GreeterGrpc.GreeterImplBase {
+	static class GreeterServiceImpl extends GreeterGrpc.GreeterImplBase {
+		private final Executor bidiExecutor;
+		private final int bidiWindow;
+
+		/**
+		 * Constructs a service handling every bidi stream message inline on the stream's callback.
+		 */
+		GreeterServiceImpl() {
+			this(null, 0);
+		}
+
+		/**
+		 * Constructs a service processing the bidi stream messages in parallel, replies still go out in request order.
+		 *
+		 * @param bidiExecutor The executor processing the bidi stream messages, inline if null.
+		 * @param bidiWindow   The maximum number of messages of one stream being processed or waiting to be sent.
+		 */
+		GreeterServiceImpl(Executor bidiExecutor, int bidiWindow) {
+			this.bidiExecutor = bidiExecutor;
+			this.bidiWindow = bidiWindow;
+		}
+
 		@Override
 		public void sayHello(Hello.HelloRequest request, StreamObserver<Hello.HelloReply> responseObserver) {
-			String greeting = new StringBuilder().append("Hello, ").append(request.getName()).append(" ").append(request.getSex()).toString();
-			Hello.HelloReply helloReply = Hello.HelloReply.newBuilder().setMessage(greeting).build();
+			Hello.HelloReply helloReply = greet(request);
 
 			responseObserver.onNext(helloReply);
 			responseObserver.onCompleted();
 		}
 
+		@Override
+		public void sayHelloBatch(Hello.HelloBatchRequest request, StreamObserver<Hello.HelloBatchReply> responseObserver) {
+			Hello.HelloBatchReply.Builder batchReply = Hello.HelloBatchReply.newBuilder();
+			for (Hello.HelloRequest helloRequest : request.getRequestsList()) {
+				batchReply.addReplies(greet(helloRequest));
+			}
+
+			responseObserver.onNext(batchReply.build());
+			responseObserver.onCompleted();
+		}
+
+		@Override
+		public void sayHelloBlob(Hello.HelloBlobRequest request, StreamObserver<Hello.HelloBlobReply> responseObserver) {
+			// The payload is echoed as is, with a zero-copy marshaller it still points into the request's buffers
+			Hello.HelloBlobReply helloBlobReply = Hello.HelloBlobReply.newBuilder()
+					.setMessage("Hello, " + request.getName())
+					.setPayload(request.getPayload())
+					.build();
+
+			responseObserver.onNext(helloBlobReply);
+			responseObserver.onCompleted();
+		}
+
+		private static Hello.HelloReply greet(Hello.HelloRequest request) {
+			String greeting = new StringBuilder().append("Hello, ").append(request.getName()).append(" ").append(request.getSex()).toString();
+			return Hello.HelloReply.newBuilder().setMessage(greeting).build();
+		}
+
 		@Override
 		public StreamObserver<Hello.HelloRequest> sayHello2(StreamObserver<Hello.HelloReply> responseObserver) {
+			boolean logMessages = !GreeterWarmup.isWarmupCall();
 			return new StreamObserver<Hello.HelloRequest>() {
 				private int count = 0;
 
 				@Override
 				public void onNext(Hello.HelloRequest value) {
 					count++;
-					log.info("Server receive: " + value.getName() + " " + value.getSex() + " " + count);
+					if (logMessages) {
+						log.info("Server receive: " + value.getName() + " " + value.getSex() + " " + count);
+					}
 				}
 
 				@Override
@@ -96,33 +427,68 @@ public class GRpcServerLauncher {
 
 				@Override
 				public void onCompleted() {
-					log.info("Server completed");
+					if (logMessages) {
+						log.info("Server completed");
+					}
 					Hello.HelloReply helloReply = Hello.HelloReply.newBuilder().setMessage("have get " + count + " messages").build();
 
 					responseObserver.onNext(helloReply);
 					responseObserver.onCompleted();
-					log.info("Server send: " + helloReply.getMessage());
+					if (logMessages) {
+						log.info("Server send: " + helloReply.getMessage());
+					}
 				}
 			};
 		}
 
 		@Override
 		public void sayHello3(Hello.HelloRequest request, StreamObserver<Hello.HelloReply> responseObserver) {
-			for (int i = 100; i < 110; i++) {
-				responseObserver.onNext(Hello.HelloReply.newBuilder().setMessage("Hello#" + i).build());
-			}
-			responseObserver.onCompleted();
-			log.info("Server send 100 - 109");
+			// Replies are produced lazily and only while the transport can take them, so a slow client cannot make the server buffer the whole stream
+			int last = 100 + (request.getReplyCount() > 0 ? request.getReplyCount() : 10);
+			Iterator<Hello.HelloReply> replies = IntStream.range(100, last).mapToObj(i -> Hello.HelloReply.newBuilder().setMessage("Hello#" + i).build()).iterator();
+			ServerCallStreamObserver<Hello.HelloReply> serverCallStreamObserver = (ServerCallStreamObserver<Hello.HelloReply>) responseObserver;
+			boolean logMessages = !GreeterWarmup.isWarmupCall();
+			serverCallStreamObserver.setOnCancelHandler(() -> log.info("Client cancelled"));
+			serverCallStreamObserver.setOnReadyHandler(new Runnable() {
+				private boolean completed = false;
+
+				@Override
+				public void run() {
+					// Called on every transition to ready, send until the outbound buffer is full again
+					while (!completed && serverCallStreamObserver.isReady() && !serverCallStreamObserver.isCancelled()) {
+						if (!replies.hasNext()) {
+							completed = true;
+							serverCallStreamObserver.onCompleted();
+							if (logMessages) {
+								log.info("Server send 100 - " + (last - 1));
+							}
+							return;
+						}
+						serverCallStreamObserver.onNext(replies.next());
+					}
+				}
+			});
 		}
 
 		@Override
 		public StreamObserver<Hello.HelloRequest> sayHello4(StreamObserver<Hello.HelloReply> responseObserver) {
+			boolean logMessages = !GreeterWarmup.isWarmupCall();
+			if (bidiExecutor != null) {
+				return new OrderedParallelStreamObserver<>(responseObserver, bidiExecutor, bidiWindow, (value, sequence) -> {
+					if (logMessages) {
+						log.info("Server receive: " + value.getName() + " " + value.getSex());
+					}
+					return Hello.HelloReply.newBuilder().setMessage("Hello#" + (200 + sequence)).build();
+				});
+			}
 			return new StreamObserver<Hello.HelloRequest>() {
 				private int count = 200;
 
 				@Override
 				public void onNext(Hello.HelloRequest value) {
-					log.info("Server receive: " + value.getName() + " " + value.getSex());
+					if (logMessages) {
+						log.info("Server receive: " + value.getName() + " " + value.getSex());
+					}
 					responseObserver.onNext(Hello.HelloReply.newBuilder().setMessage("Hello#" + count).build());
 					count++;
 				}
@@ -135,7 +501,9 @@ public class GRpcServerLauncher {
 				@Override
 				public void onCompleted() {
 					responseObserver.onCompleted();
-					log.info("Server completed");
+					if (logMessages) {
+						log.info("Server completed");
+					}
 				}
 			};
 		}
@@ -147,8 +515,39 @@ public class GRpcServerLauncher {
 	 * @param args The command line arguments.
 	 */
 	public static void main(String[] args) throws InterruptedException, IOException {
-		GRpcServerLauncher server = new GRpcServerLauncher(50051, new GreeterServiceImpl());
+		RpcMetrics rpcMetrics = new RpcMetrics("server");
+		MetricsHttpServer metricsHttpServer = new MetricsHttpServer(9464, rpcMetrics);
+		metricsHttpServer.start();
+
+		GreeterServiceImpl greeterService = new GreeterServiceImpl(ForkJoinPool.commonPool(), 64);
+		ResponseCacheInterceptor responseCache = ResponseCacheInterceptor.builder()
+				.cacheableMethod(GreeterGrpc.getSayHelloMethod().getFullMethodName())
+				.maxEntries(10_000)
+				.maxBytes(16 * 1024 * 1024)
+				.ttlMillis(TimeUnit.MINUTES.toMillis(5))
+				.build();
+		responseCache.exportTo(rpcMetrics);
+		GRpcServerLauncher server = GRpcServerLauncher.builder()
+				.port(50051)
+				// Blobs are parsed and echoed without copying them to the heap
+				.bindableService(() -> ZeroCopyMarshaller.useFor(greeterService.bindService(), GreeterGrpc.getSayHelloBlobMethod(),
+						new ZeroCopyMarshaller<>(Hello.HelloBlobRequest.getDefaultInstance()),
+						new ZeroCopyMarshaller<>(Hello.HelloBlobReply.getDefaultInstance())))
+				.nettyTransportOptions(NettyTransportOptions.builder().maxInboundMessageSize(32 * 1024 * 1024).build())
+				.interceptor(responseCache)
+				// Added after the cache so it runs first and sheds load before any other work is done, each method gets its own limit
+				.interceptor(new ConcurrencyLimitInterceptor(
+						() -> AdaptiveConcurrencyLimiter.builder().initialLimit(100).minLimit(10).maxLimit(2000).adaptive(true).build(),
+						() -> AdaptiveConcurrencyLimiter.builder().initialLimit(200).minLimit(10).maxLimit(200).build()))
+				.rpcMetrics(rpcMetrics)
+				.warmupIterations(200)
+				.drainTimeoutMillis(TimeUnit.SECONDS.toMillis(20))
+				.build();
+		// Drain on SIGTERM so that a rolling restart does not drop the in-flight streams
+		Runtime.getRuntime().addShutdownHook(new Thread(server::stopNow, "grpc-server-drain"));
+		log.info("Server transport: " + (server.getNettyTransportOptions().useEpoll() ? "epoll" : "nio"));
 		server.start();
 		server.awaitTermination(100, TimeUnit.SECONDS);
+		metricsHttpServer.stop();
 	}
 }
\ No newline at end of file
@@ -0,0 +1,67 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the service config of the Greeter client in the map form accepted by
+ * {@link io.grpc.ManagedChannelBuilder#defaultServiceConfig(Map)}, where every number must be a {@link Double}.
+ */
+public final class GreeterServiceConfig {
+	/**
+	 * Picks two backends at random and sends the call to the one with fewer calls outstanding, so a slow backend that
+	 * piles up calls gets fewer new ones. Registered by grpc-xds, which grpc-all brings along.
+	 */
+	public static final String LEAST_REQUEST = "least_request_experimental";
+
+	private GreeterServiceConfig() {
+	}
+
+	/**
+	 * Creates a service config spreading calls over every backend, ejecting backends that keep failing, hedging the
+	 * idempotent SayHello and retrying the idempotent SayHelloBatch.
+	 *
+	 * @param loadBalancingPolicy The child policy, e.g. "round_robin", or {@link #LEAST_REQUEST} to send each call to the backend with fewer calls outstanding.
+	 * @param hedgingMaxAttempts  The maximum number of concurrent attempts of a SayHello call, no hedging if below 2.
+	 * @param hedgingDelayMillis  How long to wait for a reply before sending the next attempt.
+	 *
+	 * @return The service config.
+	 */
+	public static Map<String, Object> create(String loadBalancingPolicy, int hedgingMaxAttempts, long hedgingDelayMillis) {
+		// Outlier detection wraps the load balancing policy and ejects backends whose failure rate stands out
+		Map<String, Object> outlierDetection = Map.of(
+				"interval", "1s",
+				"baseEjectionTime", "10s",
+				"maxEjectionPercent", 50.0,
+				"failurePercentageEjection", Map.of(
+						"threshold", 50.0,
+						"enforcementPercentage", 100.0,
+						"minimumHosts", 2.0,
+						"requestVolume", 20.0),
+				"childPolicy", List.of(Map.of(loadBalancingPolicy, Map.of())));
+
+		Map<String, Object> batchRetry = Map.of(
+				"name", List.of(Map.of("service", "Greeter", "method", "SayHelloBatch")),
+				"retryPolicy", Map.of(
+						"maxAttempts", 3.0,
+						"initialBackoff", "0.01s",
+						"maxBackoff", "0.1s",
+						"backoffMultiplier", 2.0,
+						"retryableStatusCodes", List.of("UNAVAILABLE")));
+		List<Map<String, Object>> methodConfig = hedgingMaxAttempts < 2 ? List.of(batchRetry) : List.of(batchRetry, Map.of(
+				"name", List.of(Map.of("service", "Greeter", "method", "SayHello")),
+				"hedgingPolicy", Map.of(
+						"maxAttempts", (double) hedgingMaxAttempts,
+						"hedgingDelay", hedgingDelayMillis / 1000.0 + "s",
+						"nonFatalStatusCodes", List.of("UNAVAILABLE", "RESOURCE_EXHAUSTED"))));
+
+		return Map.of(
+				"loadBalancingConfig", List.of(Map.of("outlier_detection_experimental", outlierDetection)),
+				"methodConfig", methodConfig,
+				// Stops retries and hedges once too many calls fail, so they cannot amplify an overload
+				"retryThrottling", Map.of("maxTokens", 100.0, "tokenRatio", 0.1));
+	}
+}
@@ -0,0 +1,123 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import com.google.protobuf.ByteString;
+import io.grpc.Channel;
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.GreeterGrpc;
+import io.grpc.Hello;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.stub.StreamObserver;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Drives synthetic load through every Greeter method, so that the JIT has compiled the handlers and the marshallers
+ * before the first real call arrives. The server marks the warmup calls with {@link #callMarker()}, so that handlers
+ * can tell them apart from real calls with {@link #isWarmupCall()}.
+ */
+@Slf4j
+public final class GreeterWarmup {
+	private static final Hello.HelloRequest REQUEST = Hello.HelloRequest.newBuilder().setName("warmup").setSex("none").setReplyCount(10).build();
+	private static final int STREAM_LENGTH = 10;
+	private static final int BATCH_SIZE = 8;
+	private static final int BLOB_SIZE = 4096;
+	private static final long STREAM_TIMEOUT_SECONDS = 10;
+	private static final Context.Key<Boolean> WARMUP_CALL = Context.key("greeter-warmup-call");
+
+	private GreeterWarmup() {
+	}
+
+	/**
+	 * Returns the interceptor marking every call it sees as a warmup call.
+	 *
+	 * @return The interceptor, to be installed on the server the warmup is run against only.
+	 */
+	public static ServerInterceptor callMarker() {
+		return new ServerInterceptor() {
+			@Override
+			public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+				return Contexts.interceptCall(Context.current().withValue(WARMUP_CALL, true), call, headers, next);
+			}
+		};
+	}
+
+	/**
+	 * Tells whether the current call was marked by {@link #callMarker()}. Only the call's own callbacks see the mark,
+	 * work handed to another executor must read it beforehand.
+	 *
+	 * @return true for a warmup call.
+	 */
+	public static boolean isWarmupCall() {
+		return Boolean.TRUE.equals(WARMUP_CALL.get());
+	}
+
+	/**
+	 * Calls every Greeter method the given number of times, streaming calls carry a few messages each.
+	 *
+	 * @param channel    The channel to the service.
+	 * @param iterations The number of calls per method.
+	 *
+	 * @throws InterruptedException If the current thread is interrupted while waiting for a stream.
+	 */
+	public static void run(Channel channel, int iterations) throws InterruptedException {
+		GreeterGrpc.GreeterBlockingStub greeterBlockingStub = GreeterGrpc.newBlockingStub(channel);
+		GreeterGrpc.GreeterStub greeterStub = GreeterGrpc.newStub(channel);
+		Hello.HelloBatchRequest batchRequest = Hello.HelloBatchRequest.newBuilder().addAllRequests(Collections.nCopies(BATCH_SIZE, REQUEST)).build();
+		Hello.HelloBlobRequest blobRequest = Hello.HelloBlobRequest.newBuilder().setName("warmup").setPayload(ByteString.copyFrom(new byte[BLOB_SIZE])).build();
+
+		for (int i = 0; i < iterations; ++i) {
+			greeterBlockingStub.sayHello(REQUEST);
+			greeterBlockingStub.sayHelloBatch(batchRequest);
+			greeterBlockingStub.sayHelloBlob(blobRequest);
+			greeterBlockingStub.sayHello3(REQUEST).forEachRemaining(reply -> {
+			});
+			stream(greeterStub::sayHello2);
+			stream(greeterStub::sayHello4);
+		}
+	}
+
+	/**
+	 * Sends a few requests on a client or bidi stream and waits for the server to finish it.
+	 *
+	 * @param call Starts the call from the observer of the replies.
+	 *
+	 * @throws InterruptedException If the current thread is interrupted while waiting.
+	 */
+	private static void stream(Function<StreamObserver<Hello.HelloReply>, StreamObserver<Hello.HelloRequest>> call) throws InterruptedException {
+		CountDownLatch finishLatch = new CountDownLatch(1);
+		StreamObserver<Hello.HelloRequest> requestObserver = call.apply(new StreamObserver<Hello.HelloReply>() {
+			@Override
+			public void onNext(Hello.HelloReply value) {
+			}
+
+			@Override
+			public void onError(Throwable throwable) {
+				log.warn("Warmup stream failed: " + throwable);
+				finishLatch.countDown();
+			}
+
+			@Override
+			public void onCompleted() {
+				finishLatch.countDown();
+			}
+		});
+		for (int i = 0; i < STREAM_LENGTH; ++i) {
+			requestObserver.onNext(REQUEST);
+		}
+		requestObserver.onCompleted();
+		if (!finishLatch.await(STREAM_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+			log.warn("Warmup stream did not finish within " + STREAM_TIMEOUT_SECONDS + " seconds");
+		}
+	}
+}
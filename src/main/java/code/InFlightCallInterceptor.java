@@ -0,0 +1,100 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import io.grpc.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Server interceptor counting the calls of the intercepted service that have started but not ended yet, so that a drain
+ * can wait for those calls only instead of for streams of other services, such as health watches, that never end on their own.
+ */
+public class InFlightCallInterceptor implements ServerInterceptor {
+	// Guarded by this
+	private int inFlight = 0;
+
+	/**
+	 * Returns the number of calls that have started but not ended yet.
+	 *
+	 * @return The number of in-flight calls.
+	 */
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	/**
+	 * Waits until no call is in flight.
+	 *
+	 * @param timeout The maximum time to wait.
+	 * @param unit    The time unit of the timeout.
+	 *
+	 * @return true if no call is in flight, false if the timeout elapsed first.
+	 *
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	public synchronized boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (inFlight > 0) {
+			long remainingNanos = deadline - System.nanoTime();
+			if (remainingNanos <= 0) {
+				return false;
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+		}
+		return true;
+	}
+
+	private synchronized void callStarted() {
+		inFlight++;
+	}
+
+	private synchronized void callEnded() {
+		if (--inFlight == 0) {
+			notifyAll();
+		}
+	}
+
+	@Override
+	public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+		callStarted();
+
+		// A call ends either by being closed or by being cancelled by the client, count whichever comes first
+		AtomicBoolean ended = new AtomicBoolean();
+		ServerCall<ReqT, RespT> trackedServerCall = new ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT>(call) {
+			@Override
+			public void close(Status status, Metadata trailers) {
+				try {
+					super.close(status, trailers);
+				} finally {
+					if (ended.compareAndSet(false, true)) {
+						callEnded();
+					}
+				}
+			}
+		};
+		ServerCall.Listener<ReqT> listener;
+		try {
+			listener = next.startCall(trackedServerCall, headers);
+		} catch (RuntimeException e) {
+			if (ended.compareAndSet(false, true)) {
+				callEnded();
+			}
+			throw e;
+		}
+		return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(listener) {
+			@Override
+			public void onCancel() {
+				try {
+					super.onCancel();
+				} finally {
+					if (ended.compareAndSet(false, true)) {
+						callEnded();
+					}
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,43 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import io.grpc.Context;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Lets an interceptor tell the interceptors outside of it that the latency of the current call is not representative,
+ * without either of them knowing the other. An interceptor measuring latency installs a flag for the call with
+ * {@link #withFlag(AtomicBoolean)}, an interceptor answering the call without doing the real work, such as a cache hit,
+ * sets it with {@link #skipCurrentCall()}.
+ */
+public final class LatencySampling {
+	private static final Context.Key<AtomicBoolean> SKIP = Context.key("latency-sampling-skip");
+
+	private LatencySampling() {
+	}
+
+	/**
+	 * Returns the current context with a flag that {@link #skipCurrentCall()} sets within it.
+	 *
+	 * @param skip The flag, read by the caller once the call has ended.
+	 *
+	 * @return The context to run the call in.
+	 */
+	public static Context withFlag(AtomicBoolean skip) {
+		return Context.current().withValue(SKIP, skip);
+	}
+
+	/**
+	 * Leaves the latency of the current call out of every measurement that installed a flag.
+	 * Does nothing if none did.
+	 */
+	public static void skipCurrentCall() {
+		AtomicBoolean skip = SKIP.get();
+		if (skip != null) {
+			skip.set(true);
+		}
+	}
+}
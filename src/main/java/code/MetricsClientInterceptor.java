@@ -0,0 +1,73 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import io.grpc.*;
+import lombok.Getter;
+
+/**
+ * Client interceptor recording the calls, messages, status codes, latency and bytes on the wire of every method into
+ * {@link RpcMetrics}. The bytes are recorded by a stream tracer attached to the options of each call.
+ */
+@Getter
+public class MetricsClientInterceptor implements ClientInterceptor {
+	private final RpcMetrics rpcMetrics;
+
+	/**
+	 * Constructs a new metrics interceptor.
+	 *
+	 * @param rpcMetrics The metrics to record into.
+	 */
+	public MetricsClientInterceptor(RpcMetrics rpcMetrics) {
+		this.rpcMetrics = rpcMetrics;
+	}
+
+	@Override
+	public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+		RpcMetrics.MethodMetrics methodMetrics = rpcMetrics.forMethod(method.getFullMethodName());
+		ClientStreamTracer.Factory streamTracerFactory = new ClientStreamTracer.Factory() {
+			@Override
+			public ClientStreamTracer newClientStreamTracer(ClientStreamTracer.StreamInfo info, Metadata headers) {
+				return new ClientStreamTracer() {
+					@Override
+					public void outboundWireSize(long bytes) {
+						methodMetrics.wireBytesSent(bytes);
+					}
+
+					@Override
+					public void inboundWireSize(long bytes) {
+						methodMetrics.wireBytesReceived(bytes);
+					}
+				};
+			}
+		};
+
+		return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions.withStreamTracerFactory(streamTracerFactory))) {
+			@Override
+			public void start(Listener<RespT> responseListener, Metadata headers) {
+				long start = System.nanoTime();
+				methodMetrics.callStarted();
+				super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(responseListener) {
+					@Override
+					public void onMessage(RespT message) {
+						methodMetrics.messageReceived();
+						super.onMessage(message);
+					}
+
+					@Override
+					public void onClose(Status status, Metadata trailers) {
+						methodMetrics.callCompleted(status.getCode(), System.nanoTime() - start);
+						super.onClose(status, trailers);
+					}
+				}, headers);
+			}
+
+			@Override
+			public void sendMessage(ReqT message) {
+				methodMetrics.messageSent();
+				super.sendMessage(message);
+			}
+		};
+	}
+}
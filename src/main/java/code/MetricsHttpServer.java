@@ -0,0 +1,81 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Minimal HTTP endpoint serving {@link RpcMetrics} on {@code /metrics} in the Prometheus text format.
+ * It listens on the loopback interface for a local scraper unless another address is given.
+ */
+@Slf4j
+@Getter
+public class MetricsHttpServer {
+	private final HttpServer httpServer;
+	private final List<RpcMetrics> rpcMetrics;
+
+	/**
+	 * Constructs a new metrics endpoint on the loopback interface.
+	 *
+	 * @param port       The port number to listen on.
+	 * @param rpcMetrics The metrics to serve.
+	 *
+	 * @throws IOException If the port could not be bound.
+	 */
+	public MetricsHttpServer(int port, RpcMetrics... rpcMetrics) throws IOException {
+		this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), rpcMetrics);
+	}
+
+	/**
+	 * Constructs a new metrics endpoint.
+	 *
+	 * @param address    The address to listen on, the wildcard address exposes the metrics on every interface.
+	 * @param rpcMetrics The metrics to serve.
+	 *
+	 * @throws IOException If the address could not be bound.
+	 */
+	public MetricsHttpServer(InetSocketAddress address, RpcMetrics... rpcMetrics) throws IOException {
+		this.rpcMetrics = List.of(rpcMetrics);
+		this.httpServer = HttpServer.create(address, 0);
+		this.httpServer.createContext("/metrics", this::handle);
+	}
+
+	/**
+	 * Starts serving requests on a background thread.
+	 */
+	public void start() {
+		httpServer.start();
+		log.info("Metrics served on http://" + httpServer.getAddress().getHostString() + ":" + httpServer.getAddress().getPort() + "/metrics");
+	}
+
+	/**
+	 * Stops serving requests.
+	 */
+	public void stop() {
+		httpServer.stop(0);
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		StringBuilder body = new StringBuilder();
+		for (RpcMetrics metrics : rpcMetrics) {
+			metrics.writePrometheus(body);
+		}
+		byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+		exchange.sendResponseHeaders(200, bytes.length);
+		try (OutputStream responseBody = exchange.getResponseBody()) {
+			responseBody.write(bytes);
+		}
+	}
+}
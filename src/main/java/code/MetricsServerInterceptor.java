@@ -0,0 +1,103 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import io.grpc.*;
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Server interceptor recording the calls, messages, status codes and latency of every method into {@link RpcMetrics}.
+ * Bytes on the wire are not visible to interceptors, they are recorded by the stream tracer of {@link #getStreamTracerFactory()}.
+ */
+@Getter
+public class MetricsServerInterceptor implements ServerInterceptor {
+	private static final ServerStreamTracer NOOP_STREAM_TRACER = new ServerStreamTracer() {
+	};
+
+	private final RpcMetrics rpcMetrics;
+	private final ServerStreamTracer.Factory streamTracerFactory;
+
+	/**
+	 * Constructs a new metrics interceptor.
+	 *
+	 * @param rpcMetrics The metrics to record into.
+	 */
+	public MetricsServerInterceptor(RpcMetrics rpcMetrics) {
+		this.rpcMetrics = rpcMetrics;
+		this.streamTracerFactory = new ServerStreamTracer.Factory() {
+			@Override
+			public ServerStreamTracer newServerStreamTracer(String fullMethodName, Metadata headers) {
+				// The name comes from the client before any method lookup, only methods registered from a served service are recorded
+				RpcMetrics.MethodMetrics methodMetrics = rpcMetrics.getMethod(fullMethodName);
+				if (methodMetrics == null) {
+					return NOOP_STREAM_TRACER;
+				}
+				return new ServerStreamTracer() {
+					@Override
+					public void outboundWireSize(long bytes) {
+						methodMetrics.wireBytesSent(bytes);
+					}
+
+					@Override
+					public void inboundWireSize(long bytes) {
+						methodMetrics.wireBytesReceived(bytes);
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Creates the metrics of every method of a service, the wire bytes of calls to methods that are not registered are not recorded.
+	 *
+	 * @param serviceDefinition The service definition.
+	 */
+	public void registerService(ServerServiceDefinition serviceDefinition) {
+		for (ServerMethodDefinition<?, ?> serverMethodDefinition : serviceDefinition.getMethods()) {
+			rpcMetrics.forMethod(serverMethodDefinition.getMethodDescriptor().getFullMethodName());
+		}
+	}
+
+	@Override
+	public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+		RpcMetrics.MethodMetrics methodMetrics = rpcMetrics.forMethod(call.getMethodDescriptor().getFullMethodName());
+		long start = System.nanoTime();
+		methodMetrics.callStarted();
+
+		// A call ends either by being closed or by being cancelled by the client, record whichever comes first
+		AtomicBoolean completed = new AtomicBoolean();
+		ServerCall<ReqT, RespT> metricsServerCall = new ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT>(call) {
+			@Override
+			public void sendMessage(RespT message) {
+				methodMetrics.messageSent();
+				super.sendMessage(message);
+			}
+
+			@Override
+			public void close(Status status, Metadata trailers) {
+				if (completed.compareAndSet(false, true)) {
+					methodMetrics.callCompleted(status.getCode(), System.nanoTime() - start);
+				}
+				super.close(status, trailers);
+			}
+		};
+		return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(next.startCall(metricsServerCall, headers)) {
+			@Override
+			public void onMessage(ReqT message) {
+				methodMetrics.messageReceived();
+				super.onMessage(message);
+			}
+
+			@Override
+			public void onCancel() {
+				if (completed.compareAndSet(false, true)) {
+					methodMetrics.callCompleted(Status.Code.CANCELLED, System.nanoTime() - start);
+				}
+				super.onCancel();
+			}
+		};
+	}
+}
@@ -0,0 +1,127 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Netty transport settings shared by {@link GRpcServerLauncher} and {@link GRpcClientLauncher}.
+ * The native epoll transport is used when it is available on the running platform, NIO otherwise.
+ * Numeric settings left at zero keep the gRPC or Netty default.
+ */
+@Getter
+@Builder
+public class NettyTransportOptions {
+	/**
+	 * Whether to use the native epoll transport when it is available.
+	 */
+	@Builder.Default
+	private final boolean preferEpoll = true;
+	/**
+	 * The number of threads accepting connections on the server.
+	 */
+	@Builder.Default
+	private final int bossThreads = 1;
+	/**
+	 * The number of event loop threads serving connections, twice the number of processors if zero.
+	 */
+	private final int workerThreads;
+	/**
+	 * Whether several server sockets may bind the same port, only honored by the epoll transport.
+	 */
+	private final boolean reusePort;
+	/**
+	 * Whether to use the pooled buffer allocator rather than allocating a new buffer for every read and write.
+	 */
+	@Builder.Default
+	private final boolean pooledAllocator = true;
+	/**
+	 * The HTTP/2 flow-control window in bytes.
+	 */
+	private final int flowControlWindow;
+	/**
+	 * The maximum number of concurrent calls per connection, only used by the server.
+	 */
+	private final int maxConcurrentCallsPerConnection;
+	/**
+	 * The maximum size of an inbound message in bytes.
+	 */
+	private final int maxInboundMessageSize;
+	/**
+	 * The interval between keepalive pings in seconds.
+	 */
+	private final long keepAliveTimeSeconds;
+	/**
+	 * How long to wait for a keepalive ping acknowledgement in seconds.
+	 */
+	private final long keepAliveTimeoutSeconds;
+	/**
+	 * The shortest keepalive interval the server accepts from clients in seconds, only used by the server.
+	 */
+	private final long permitKeepAliveTimeSeconds;
+
+	/**
+	 * Returns whether the epoll transport is used.
+	 *
+	 * @return True if epoll is preferred and available.
+	 */
+	public boolean useEpoll() {
+		return preferEpoll && Epoll.isAvailable();
+	}
+
+	/**
+	 * Creates an event loop group for the selected transport.
+	 *
+	 * @param threads  The number of threads, the Netty default if zero.
+	 * @param poolName The name prefix of the threads.
+	 *
+	 * @return The event loop group.
+	 */
+	public EventLoopGroup newEventLoopGroup(int threads, String poolName) {
+		DefaultThreadFactory threadFactory = new DefaultThreadFactory(poolName, true);
+		return useEpoll() ? new EpollEventLoopGroup(threads, threadFactory) : new NioEventLoopGroup(threads, threadFactory);
+	}
+
+	/**
+	 * Returns the server socket channel type matching the selected transport.
+	 *
+	 * @return The server channel type.
+	 */
+	public Class<? extends ServerChannel> serverChannelType() {
+		return useEpoll() ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+	}
+
+	/**
+	 * Returns the client socket channel type matching the selected transport.
+	 *
+	 * @return The client channel type.
+	 */
+	public Class<? extends Channel> channelType() {
+		return useEpoll() ? EpollSocketChannel.class : NioSocketChannel.class;
+	}
+
+	/**
+	 * Returns the buffer allocator for the channels.
+	 *
+	 * @return The pooled or the unpooled allocator.
+	 */
+	public ByteBufAllocator allocator() {
+		return pooledAllocator ? PooledByteBufAllocator.DEFAULT : UnpooledByteBufAllocator.DEFAULT;
+	}
+}
@@ -0,0 +1,151 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+
+/**
+ * Request observer of a bidi stream that processes the requests in parallel on an executor while still emitting the
+ * replies in request order. Finished replies wait in a reorder buffer until every earlier reply has been sent.
+ * Replies are only sent while the transport is ready, the others stay in the buffer until the client reads again.
+ * Inbound flow control is tied to the window: at most {@code window} requests are received ahead of the last sent
+ * reply, so one heavy stream can use several cores without its memory growing with the length of the stream or with
+ * a client that stops reading.
+ *
+ * @param <ReqT>  The request type.
+ * @param <RespT> The reply type.
+ */
+@Slf4j
+public class OrderedParallelStreamObserver<ReqT, RespT> implements StreamObserver<ReqT> {
+	private final ServerCallStreamObserver<RespT> responseObserver;
+	private final Executor executor;
+	private final BiFunction<ReqT, Long, RespT> handler;
+	// Read on the service method's thread, the executor threads do not see the call's context
+	private final boolean logCompletion = !GreeterWarmup.isWarmupCall();
+
+	// Guarded by this
+	private final Map<Long, RespT> reorderBuffer = new HashMap<>();
+	private long received = 0;
+	private long emitted = 0;
+	private boolean inputCompleted = false;
+	private boolean finished = false;
+
+	/**
+	 * Constructs a new observer, must be called from the service method so that inbound flow control can still be taken over.
+	 *
+	 * @param responseObserver The observer of the replies.
+	 * @param executor         The executor running the handler.
+	 * @param window           The maximum number of requests received but whose reply has not been sent yet.
+	 * @param handler          Computes the reply of a request from the request and its position in the stream.
+	 */
+	public OrderedParallelStreamObserver(StreamObserver<RespT> responseObserver, Executor executor, int window, BiFunction<ReqT, Long, RespT> handler) {
+		this.responseObserver = (ServerCallStreamObserver<RespT>) responseObserver;
+		this.executor = executor;
+		this.handler = handler;
+		this.responseObserver.disableAutoRequest();
+		this.responseObserver.setOnCancelHandler(() -> {
+			synchronized (this) {
+				finished = true;
+				reorderBuffer.clear();
+			}
+		});
+		// Called on every transition to ready, sends the replies held back while the transport was full
+		this.responseObserver.setOnReadyHandler(this::drain);
+		this.responseObserver.request(Math.max(1, window));
+	}
+
+	@Override
+	public void onNext(ReqT value) {
+		long sequence;
+		synchronized (this) {
+			if (finished) {
+				return;
+			}
+			sequence = received++;
+		}
+		executor.execute(() -> {
+			RespT reply;
+			try {
+				reply = handler.apply(value, sequence);
+			} catch (RuntimeException e) {
+				fail(e);
+				return;
+			}
+			complete(sequence, reply);
+		});
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		log.error(throwable.toString());
+		synchronized (this) {
+			finished = true;
+			reorderBuffer.clear();
+		}
+	}
+
+	@Override
+	public synchronized void onCompleted() {
+		inputCompleted = true;
+		completeIfDrained();
+	}
+
+	/**
+	 * Buffers a finished reply and sends every reply that is now next in order.
+	 *
+	 * @param sequence The position of the request in the stream.
+	 * @param reply    The reply to the request.
+	 */
+	private synchronized void complete(long sequence, RespT reply) {
+		if (finished) {
+			return;
+		}
+		reorderBuffer.put(sequence, reply);
+		drain();
+	}
+
+	/**
+	 * Sends the buffered replies in order for as long as the transport is ready.
+	 */
+	private synchronized void drain() {
+		if (finished) {
+			return;
+		}
+		RespT next;
+		while (responseObserver.isReady() && (next = reorderBuffer.remove(emitted)) != null) {
+			responseObserver.onNext(next);
+			emitted++;
+			// Every sent reply frees a slot of the window for one more request
+			responseObserver.request(1);
+		}
+		completeIfDrained();
+	}
+
+	private synchronized void fail(RuntimeException e) {
+		if (finished) {
+			return;
+		}
+		finished = true;
+		reorderBuffer.clear();
+		responseObserver.onError(Status.INTERNAL.withDescription("Failed to process request").withCause(e).asRuntimeException());
+	}
+
+	private void completeIfDrained() {
+		if (!finished && inputCompleted && emitted == received) {
+			finished = true;
+			responseObserver.onCompleted();
+			if (logCompletion) {
+				log.info("Server completed");
+			}
+		}
+	}
+}
@@ -0,0 +1,314 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import com.google.protobuf.MessageLite;
+import io.grpc.*;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Singular;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Server interceptor that caches the responses of idempotent unary methods, keyed on the parsed request.
+ * Protobuf messages compare by value, so the key needs no serialization on the hot path, the price is that each entry
+ * also keeps its request object alive.
+ * On a hit the cached response is sent straight back and the service is never invoked.
+ * The cache is split into segments with their own lock to spread contention, while the entry and byte budgets hold for
+ * the cache as a whole: once a put takes the cache over budget, the least recently used entries of the segment it went
+ * to are evicted first, then those of the other segments, so a hot segment may use most of the budget.
+ * Entries older than the time to live are dropped on access.
+ */
+public class ResponseCacheInterceptor implements ServerInterceptor {
+	private static final int SEGMENT_COUNT = 16;
+
+	@Getter
+	private final Set<String> cacheableMethods;
+	@Getter
+	private final long ttlNanos;
+	@Getter
+	private final int maxEntries;
+	@Getter
+	private final long maxBytes;
+	private final Segment[] segments = new Segment[SEGMENT_COUNT];
+	private final AtomicLong entryCount = new AtomicLong();
+	private final AtomicLong byteCount = new AtomicLong();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * Constructs a new response cache.
+	 *
+	 * @param cacheableMethods The full names of the unary methods whose responses may be cached.
+	 * @param maxEntries       The maximum number of cached responses.
+	 * @param maxBytes         The maximum serialized size of all cached requests and responses.
+	 * @param ttlMillis        How long a response stays cached in milliseconds, forever if not positive.
+	 *
+	 * @throws IllegalArgumentException If maxEntries or maxBytes is not positive.
+	 */
+	@Builder
+	public ResponseCacheInterceptor(@Singular Set<String> cacheableMethods, int maxEntries, long maxBytes, long ttlMillis) {
+		if (maxEntries <= 0 || maxBytes <= 0) {
+			throw new IllegalArgumentException("maxEntries and maxBytes must be positive but got " + maxEntries + " and " + maxBytes);
+		}
+		this.cacheableMethods = cacheableMethods;
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+		this.ttlNanos = ttlMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(ttlMillis) : Long.MAX_VALUE;
+		for (int i = 0; i < SEGMENT_COUNT; ++i) {
+			segments[i] = new Segment();
+		}
+	}
+
+	@Override
+	public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+		MethodDescriptor<ReqT, RespT> methodDescriptor = call.getMethodDescriptor();
+		if (methodDescriptor.getType() != MethodDescriptor.MethodType.UNARY || !cacheableMethods.contains(methodDescriptor.getFullMethodName())) {
+			return next.startCall(call, headers);
+		}
+		CachingServerCall<ReqT, RespT> cachingServerCall = new CachingServerCall<>(call);
+		return new CachingListener<>(next.startCall(cachingServerCall, headers), cachingServerCall);
+	}
+
+	/**
+	 * Returns the number of calls answered from the cache.
+	 *
+	 * @return The hit count.
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of calls passed on to the service.
+	 *
+	 * @return The miss count.
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the number of responses dropped because of the size limits or the time to live.
+	 *
+	 * @return The eviction count.
+	 */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Exports the hit, miss and eviction counters with the given metrics.
+	 *
+	 * @param rpcMetrics The metrics served to Prometheus.
+	 */
+	public void exportTo(RpcMetrics rpcMetrics) {
+		rpcMetrics.registerCounter("response_cache_hits_total", "Total number of calls answered from the response cache.", this::getHitCount);
+		rpcMetrics.registerCounter("response_cache_misses_total", "Total number of cacheable calls passed on to the service.", this::getMissCount);
+		rpcMetrics.registerCounter("response_cache_evictions_total", "Total number of responses dropped from the response cache.", this::getEvictionCount);
+	}
+
+	/**
+	 * Returns the number of cached responses.
+	 *
+	 * @return The entry count.
+	 */
+	public long getEntryCount() {
+		return entryCount.get();
+	}
+
+	/**
+	 * Returns the serialized size of all cached requests and responses.
+	 *
+	 * @return The byte count.
+	 */
+	public long getByteCount() {
+		return byteCount.get();
+	}
+
+	private int segmentIndexOf(CacheKey cacheKey) {
+		int hash = cacheKey.hashCode();
+		return (hash ^ (hash >>> 16)) & (SEGMENT_COUNT - 1);
+	}
+
+	private Segment segmentFor(CacheKey cacheKey) {
+		return segments[segmentIndexOf(cacheKey)];
+	}
+
+	private boolean overBudget() {
+		return entryCount.get() > maxEntries || byteCount.get() > maxBytes;
+	}
+
+	/**
+	 * Caches a response, then evicts until the cache fits its budgets again.
+	 * Only one segment lock is held at a time, so concurrent puts into different segments cannot deadlock.
+	 */
+	private void put(CacheKey cacheKey, Object response, int size) {
+		if (size > maxBytes) {
+			return;
+		}
+		int index = segmentIndexOf(cacheKey);
+		segments[index].put(cacheKey, response, size);
+		// The segment that just grew keeps its newest entry, the others may be emptied
+		for (int i = 0; i < SEGMENT_COUNT && overBudget(); ++i) {
+			Segment segment = segments[(index + i) & (SEGMENT_COUNT - 1)];
+			int keep = i == 0 ? 1 : 0;
+			boolean evicted = true;
+			while (evicted && overBudget()) {
+				evicted = segment.evictEldest(keep);
+			}
+		}
+	}
+
+	/**
+	 * Cache key made of the method and the request, so equal requests to different methods do not collide.
+	 */
+	private record CacheKey(String fullMethodName, MessageLite request) {
+	}
+
+	private record CacheEntry(Object response, int size, long expiresAt) {
+	}
+
+	/**
+	 * A part of the cache guarded by its own lock, in least recently used order. The budgets are kept by the enclosing cache.
+	 */
+	private class Segment {
+		private final LinkedHashMap<CacheKey, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+		synchronized Object get(CacheKey cacheKey) {
+			CacheEntry cacheEntry = entries.get(cacheKey);
+			if (cacheEntry == null) {
+				return null;
+			}
+			if (ttlNanos != Long.MAX_VALUE && System.nanoTime() - cacheEntry.expiresAt() > 0) {
+				entries.remove(cacheKey);
+				removed(cacheEntry);
+				return null;
+			}
+			return cacheEntry.response();
+		}
+
+		synchronized void put(CacheKey cacheKey, Object response, int size) {
+			CacheEntry previous = entries.put(cacheKey, new CacheEntry(response, size, System.nanoTime() + ttlNanos));
+			if (previous != null) {
+				byteCount.addAndGet(-previous.size());
+			} else {
+				entryCount.incrementAndGet();
+			}
+			byteCount.addAndGet(size);
+		}
+
+		/**
+		 * Evicts the least recently used entry.
+		 *
+		 * @param keep The number of most recently used entries that must not be evicted.
+		 *
+		 * @return false if the segment had no entry to evict.
+		 */
+		synchronized boolean evictEldest(int keep) {
+			if (entries.size() <= keep) {
+				return false;
+			}
+			Iterator<Map.Entry<CacheKey, CacheEntry>> iterator = entries.entrySet().iterator();
+			CacheEntry eldest = iterator.next().getValue();
+			iterator.remove();
+			removed(eldest);
+			return true;
+		}
+
+		private void removed(CacheEntry cacheEntry) {
+			entryCount.decrementAndGet();
+			byteCount.addAndGet(-cacheEntry.size());
+			evictions.increment();
+		}
+	}
+
+	/**
+	 * Server call that remembers the response sent by the service and caches it once the call closes successfully.
+	 */
+	private class CachingServerCall<ReqT, RespT> extends ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT> {
+		private CacheKey cacheKey;
+		private RespT response;
+
+		CachingServerCall(ServerCall<ReqT, RespT> delegate) {
+			super(delegate);
+		}
+
+		@Override
+		public void sendMessage(RespT message) {
+			response = message;
+			super.sendMessage(message);
+		}
+
+		/**
+		 * Answers the call with a cached response, bypassing {@link #close(Status, Metadata)} so it is not stored again.
+		 *
+		 * @param cachedResponse The cached response.
+		 */
+		void sendCached(RespT cachedResponse) {
+			delegate().sendHeaders(new Metadata());
+			delegate().sendMessage(cachedResponse);
+			delegate().close(Status.OK, new Metadata());
+		}
+
+		@Override
+		public void close(Status status, Metadata trailers) {
+			if (status.isOk() && cacheKey != null && response instanceof MessageLite messageLite) {
+				put(cacheKey, response, cacheKey.request().getSerializedSize() + messageLite.getSerializedSize());
+			}
+			super.close(status, trailers);
+		}
+	}
+
+	/**
+	 * Listener that looks up the request and answers a hit itself, misses are passed on to the service.
+	 */
+	private class CachingListener<ReqT, RespT> extends ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT> {
+		private final CachingServerCall<ReqT, RespT> cachingServerCall;
+		private boolean hit = false;
+
+		CachingListener(ServerCall.Listener<ReqT> delegate, CachingServerCall<ReqT, RespT> cachingServerCall) {
+			super(delegate);
+			this.cachingServerCall = cachingServerCall;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public void onMessage(ReqT message) {
+			if (!(message instanceof MessageLite messageLite)) {
+				super.onMessage(message);
+				return;
+			}
+			CacheKey cacheKey = new CacheKey(cachingServerCall.getMethodDescriptor().getFullMethodName(), messageLite);
+			Object response = segmentFor(cacheKey).get(cacheKey);
+			if (response == null) {
+				misses.increment();
+				cachingServerCall.cacheKey = cacheKey;
+				super.onMessage(message);
+				return;
+			}
+
+			hits.increment();
+			hit = true;
+			// A hit does none of the work of the service, its latency would only skew latency based measurements such as a concurrency limit
+			LatencySampling.skipCurrentCall();
+			cachingServerCall.sendCached((RespT) response);
+		}
+
+		@Override
+		public void onHalfClose() {
+			if (!hit) {
+				super.onHalfClose();
+			}
+		}
+	}
+}
@@ -0,0 +1,250 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import io.grpc.Status;
+import lombok.Getter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-method rpc metrics of one side of the connection, recorded by {@link MetricsServerInterceptor} or
+ * {@link MetricsClientInterceptor} and rendered in the Prometheus text format by {@link MetricsHttpServer}.
+ * Every counter and histogram bucket is a {@link LongAdder}, so concurrent calls recording the same method do not contend.
+ */
+@Getter
+public class RpcMetrics {
+	// Upper bounds of the latency buckets in microseconds, the last bucket is unbounded
+	private static final long[] LATENCY_BUCKETS_MICROS = {50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000, 500_000, 1_000_000, 2_500_000, 5_000_000, 10_000_000};
+
+	private final String side;
+	private final ConcurrentMap<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, ExternalCounter> counters = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructs a new metrics registry.
+	 *
+	 * @param side The side recording the metrics, "server" or "client", used as the metric name prefix.
+	 */
+	public RpcMetrics(String side) {
+		this.side = side;
+	}
+
+	/**
+	 * Returns the metrics of a method, creating them on first use.
+	 *
+	 * @param fullMethodName The full method name, e.g. "Greeter/SayHello".
+	 *
+	 * @return The metrics of the method.
+	 */
+	public MethodMetrics forMethod(String fullMethodName) {
+		MethodMetrics methodMetrics = methods.get(fullMethodName);
+		return methodMetrics != null ? methodMetrics : methods.computeIfAbsent(fullMethodName, MethodMetrics::new);
+	}
+
+	/**
+	 * Returns the metrics of a method without creating them.
+	 *
+	 * @param fullMethodName The full method name, e.g. "Greeter/SayHello".
+	 *
+	 * @return The metrics of the method, or null if none have been recorded yet.
+	 */
+	public MethodMetrics getMethod(String fullMethodName) {
+		return methods.get(fullMethodName);
+	}
+
+	/**
+	 * Registers a counter kept outside of the registry, e.g. by an interceptor, it is read on every scrape.
+	 *
+	 * @param name  The metric name without the side prefix.
+	 * @param help  The help text.
+	 * @param value Reads the current count.
+	 */
+	public void registerCounter(String name, String help, LongSupplier value) {
+		counters.put(name, new ExternalCounter(help, value));
+	}
+
+	/**
+	 * Appends all metrics in the Prometheus text exposition format.
+	 *
+	 * @param out The builder to append to.
+	 */
+	public void writePrometheus(StringBuilder out) {
+		String prefix = "grpc_" + side + "_";
+		writeCounter(out, prefix + "started_total", "Total number of RPCs started.", MethodMetrics::getStarted);
+		writeGauge(out, prefix + "in_flight", "Number of RPCs currently in flight.", MethodMetrics::getInFlight);
+		writeCounter(out, prefix + "msg_received_total", "Total number of stream messages received.", MethodMetrics::getMessagesReceived);
+		writeCounter(out, prefix + "msg_sent_total", "Total number of stream messages sent.", MethodMetrics::getMessagesSent);
+		writeCounter(out, prefix + "wire_bytes_received_total", "Total number of bytes received on the wire.", MethodMetrics::getBytesReceived);
+		writeCounter(out, prefix + "wire_bytes_sent_total", "Total number of bytes sent on the wire.", MethodMetrics::getBytesSent);
+
+		String handled = prefix + "handled_total";
+		out.append("# HELP ").append(handled).append(" Total number of RPCs completed, by status code.\n");
+		out.append("# TYPE ").append(handled).append(" counter\n");
+		for (MethodMetrics methodMetrics : methods.values()) {
+			for (Status.Code code : Status.Code.values()) {
+				long count = methodMetrics.statusCounts[code.value()].sum();
+				if (count > 0) {
+					out.append(handled).append('{').append(methodMetrics.labels).append(",grpc_code=\"").append(code.name()).append("\"} ").append(count).append('\n');
+				}
+			}
+		}
+
+		String latency = prefix + "handling_seconds";
+		out.append("# HELP ").append(latency).append(" Latency of completed RPCs.\n");
+		out.append("# TYPE ").append(latency).append(" histogram\n");
+		for (MethodMetrics methodMetrics : methods.values()) {
+			long cumulative = 0;
+			for (int i = 0; i <= LATENCY_BUCKETS_MICROS.length; ++i) {
+				cumulative += methodMetrics.latencyBuckets[i].sum();
+				String bound = i < LATENCY_BUCKETS_MICROS.length ? Double.toString(LATENCY_BUCKETS_MICROS[i] / 1e6) : "+Inf";
+				out.append(latency).append("_bucket{").append(methodMetrics.labels).append(",le=\"").append(bound).append("\"} ").append(cumulative).append('\n');
+			}
+			out.append(latency).append("_sum{").append(methodMetrics.labels).append("} ").append(methodMetrics.latencySumNanos.sum() / 1e9).append('\n');
+			out.append(latency).append("_count{").append(methodMetrics.labels).append("} ").append(cumulative).append('\n');
+		}
+
+		for (Map.Entry<String, ExternalCounter> counter : counters.entrySet()) {
+			String name = prefix + counter.getKey();
+			out.append("# HELP ").append(name).append(' ').append(counter.getValue().help()).append('\n');
+			out.append("# TYPE ").append(name).append(" counter\n");
+			out.append(name).append(' ').append(counter.getValue().value().getAsLong()).append('\n');
+		}
+	}
+
+	/**
+	 * Escapes a label value for the text format, which only reserves the backslash, the double quote and the line feed.
+	 */
+	private static String escapeLabelValue(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	private record ExternalCounter(String help, LongSupplier value) {
+	}
+
+	private void writeCounter(StringBuilder out, String name, String help, Function<MethodMetrics, Long> value) {
+		writeFamily(out, name, help, "counter", value);
+	}
+
+	private void writeGauge(StringBuilder out, String name, String help, Function<MethodMetrics, Long> value) {
+		writeFamily(out, name, help, "gauge", value);
+	}
+
+	private void writeFamily(StringBuilder out, String name, String help, String type, Function<MethodMetrics, Long> value) {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+		for (MethodMetrics methodMetrics : methods.values()) {
+			out.append(name).append('{').append(methodMetrics.labels).append("} ").append(value.apply(methodMetrics)).append('\n');
+		}
+	}
+
+	/**
+	 * The metrics of a single method.
+	 */
+	public static class MethodMetrics {
+		private final String labels;
+		private final LongAdder started = new LongAdder();
+		private final LongAdder inFlight = new LongAdder();
+		private final LongAdder messagesReceived = new LongAdder();
+		private final LongAdder messagesSent = new LongAdder();
+		private final LongAdder bytesReceived = new LongAdder();
+		private final LongAdder bytesSent = new LongAdder();
+		private final LongAdder[] statusCounts = new LongAdder[Status.Code.values().length];
+		private final LongAdder[] latencyBuckets = new LongAdder[LATENCY_BUCKETS_MICROS.length + 1];
+		private final LongAdder latencySumNanos = new LongAdder();
+
+		MethodMetrics(String fullMethodName) {
+			int separator = fullMethodName.lastIndexOf('/');
+			this.labels = "grpc_service=\"" + escapeLabelValue(fullMethodName.substring(0, Math.max(0, separator))) + "\",grpc_method=\"" + escapeLabelValue(fullMethodName.substring(separator + 1)) + "\"";
+			for (int i = 0; i < statusCounts.length; ++i) {
+				statusCounts[i] = new LongAdder();
+			}
+			for (int i = 0; i < latencyBuckets.length; ++i) {
+				latencyBuckets[i] = new LongAdder();
+			}
+		}
+
+		/**
+		 * Records the start of a call.
+		 */
+		public void callStarted() {
+			started.increment();
+			inFlight.increment();
+		}
+
+		/**
+		 * Records the end of a call.
+		 *
+		 * @param code          The status code the call completed with.
+		 * @param durationNanos The duration of the call in nanoseconds.
+		 */
+		public void callCompleted(Status.Code code, long durationNanos) {
+			inFlight.decrement();
+			statusCounts[code.value()].increment();
+			latencySumNanos.add(durationNanos);
+			latencyBuckets[bucketOf(TimeUnit.NANOSECONDS.toMicros(durationNanos))].increment();
+		}
+
+		public void messageReceived() {
+			messagesReceived.increment();
+		}
+
+		public void messageSent() {
+			messagesSent.increment();
+		}
+
+		public void wireBytesReceived(long bytes) {
+			bytesReceived.add(bytes);
+		}
+
+		public void wireBytesSent(long bytes) {
+			bytesSent.add(bytes);
+		}
+
+		public long getStarted() {
+			return started.sum();
+		}
+
+		public long getInFlight() {
+			return inFlight.sum();
+		}
+
+		public long getMessagesReceived() {
+			return messagesReceived.sum();
+		}
+
+		public long getMessagesSent() {
+			return messagesSent.sum();
+		}
+
+		public long getBytesReceived() {
+			return bytesReceived.sum();
+		}
+
+		public long getBytesSent() {
+			return bytesSent.sum();
+		}
+
+		private static int bucketOf(long micros) {
+			// Binary search for the first bucket whose upper bound holds the value
+			int low = 0;
+			int high = LATENCY_BUCKETS_MICROS.length;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (LATENCY_BUCKETS_MICROS[middle] < micros) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+	}
+}
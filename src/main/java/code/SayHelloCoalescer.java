@@ -0,0 +1,178 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import io.grpc.GreeterGrpc;
+import io.grpc.Hello;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gathers individual SayHello calls and sends them as one SayHelloBatch call, so that many small calls share the
+ * headers, stream setup and scheduling cost of a single rpc.
+ * A batch is sent once it holds {@code maxBatchSize} requests or when the oldest request has waited {@code maxDelay},
+ * whichever comes first, and the replies are handed back to the callers in request order.
+ */
+public class SayHelloCoalescer implements AutoCloseable {
+	private final GreeterGrpc.GreeterStub greeterStub;
+	private final int maxBatchSize;
+	private final long maxDelayNanos;
+	private final ScheduledExecutorService scheduler;
+	private List<PendingCall> pendingCalls;
+	private ScheduledFuture<?> scheduledFlush;
+	// Counts the batches taken so far, a delay timer only flushes the batch it was started for
+	private long generation = 0;
+	private boolean closed = false;
+
+	/**
+	 * Constructs a new coalescer.
+	 *
+	 * @param greeterStub  The stub used to send the batches.
+	 * @param maxBatchSize The maximum number of requests in a batch.
+	 * @param maxDelay     How long the first request of a batch may wait for others.
+	 * @param unit         The time unit of maxDelay.
+	 */
+	public SayHelloCoalescer(GreeterGrpc.GreeterStub greeterStub, int maxBatchSize, long maxDelay, TimeUnit unit) {
+		this.greeterStub = greeterStub;
+		this.maxBatchSize = Math.max(1, maxBatchSize);
+		this.maxDelayNanos = unit.toNanos(maxDelay);
+		this.pendingCalls = new ArrayList<>(this.maxBatchSize);
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "say-hello-coalescer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Queues a request for the next batch.
+	 *
+	 * @param request The request to send.
+	 *
+	 * @return A future completed with the reply to this request, failed right away once the coalescer is closed.
+	 */
+	public CompletableFuture<Hello.HelloReply> sayHello(Hello.HelloRequest request) {
+		CompletableFuture<Hello.HelloReply> reply = new CompletableFuture<>();
+		List<PendingCall> batch = null;
+		synchronized (this) {
+			if (closed) {
+				reply.completeExceptionally(new IllegalStateException("Coalescer is closed"));
+				return reply;
+			}
+			pendingCalls.add(new PendingCall(request, reply));
+			if (pendingCalls.size() >= maxBatchSize) {
+				batch = takePendingCalls();
+			} else if (pendingCalls.size() == 1) {
+				// The first request of a batch starts the delay window
+				long batchGeneration = generation;
+				scheduledFlush = scheduler.schedule(() -> flush(batchGeneration), maxDelayNanos, TimeUnit.NANOSECONDS);
+			}
+		}
+		// Send outside the lock so other callers can start the next batch meanwhile
+		if (batch != null) {
+			send(batch);
+		}
+		return reply;
+	}
+
+	/**
+	 * Sends the pending requests right away.
+	 */
+	public void flush() {
+		List<PendingCall> batch;
+		synchronized (this) {
+			if (pendingCalls.isEmpty()) {
+				return;
+			}
+			batch = takePendingCalls();
+		}
+		send(batch);
+	}
+
+	/**
+	 * Sends the pending requests if they are still the batch a delay timer was started for.
+	 * A timer that already runs cannot be cancelled, without this check it would flush the next batch early.
+	 *
+	 * @param batchGeneration The generation of the batch the timer was started for.
+	 */
+	private void flush(long batchGeneration) {
+		List<PendingCall> batch;
+		synchronized (this) {
+			if (batchGeneration != generation || pendingCalls.isEmpty()) {
+				return;
+			}
+			batch = takePendingCalls();
+		}
+		send(batch);
+	}
+
+	/**
+	 * Sends the pending requests and stops the delay timer, later calls are rejected.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			closed = true;
+		}
+		flush();
+		scheduler.shutdown();
+	}
+
+	private List<PendingCall> takePendingCalls() {
+		List<PendingCall> batch = pendingCalls;
+		pendingCalls = new ArrayList<>(maxBatchSize);
+		generation++;
+		if (scheduledFlush != null) {
+			scheduledFlush.cancel(false);
+			scheduledFlush = null;
+		}
+		return batch;
+	}
+
+	/**
+	 * Sends one batch and splits the batch reply back out to the callers.
+	 *
+	 * @param batch The pending calls, in request order.
+	 */
+	private void send(List<PendingCall> batch) {
+		Hello.HelloBatchRequest.Builder batchRequest = Hello.HelloBatchRequest.newBuilder();
+		for (PendingCall pendingCall : batch) {
+			batchRequest.addRequests(pendingCall.request());
+		}
+		greeterStub.sayHelloBatch(batchRequest.build(), new StreamObserver<Hello.HelloBatchReply>() {
+			@Override
+			public void onNext(Hello.HelloBatchReply batchReply) {
+				if (batchReply.getRepliesCount() != batch.size()) {
+					onError(Status.INTERNAL.withDescription("Expected " + batch.size() + " replies but got " + batchReply.getRepliesCount()).asRuntimeException());
+					return;
+				}
+				for (int i = 0; i < batch.size(); ++i) {
+					batch.get(i).reply().complete(batchReply.getReplies(i));
+				}
+			}
+
+			@Override
+			public void onError(Throwable throwable) {
+				for (PendingCall pendingCall : batch) {
+					pendingCall.reply().completeExceptionally(throwable);
+				}
+			}
+
+			@Override
+			public void onCompleted() {
+			}
+		});
+	}
+
+	private record PendingCall(Hello.HelloRequest request, CompletableFuture<Hello.HelloReply> reply) {
+	}
+}
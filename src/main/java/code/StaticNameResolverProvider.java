@@ -0,0 +1,81 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import io.grpc.Attributes;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.NameResolver;
+import io.grpc.NameResolverProvider;
+import lombok.Getter;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Name resolver for a fixed list of backends, e.g. several servers on local ports.
+ * It resolves targets of the form {@code static:///name} to every backend, each in its own address group so that a
+ * load balancing policy such as round_robin opens one connection per backend.
+ */
+@Getter
+public class StaticNameResolverProvider extends NameResolverProvider {
+	public static final String SCHEME = "static";
+
+	private final List<EquivalentAddressGroup> addressGroups;
+
+	/**
+	 * Constructs a new provider.
+	 *
+	 * @param backends The addresses of the backends.
+	 */
+	public StaticNameResolverProvider(List<InetSocketAddress> backends) {
+		this.addressGroups = backends.stream().map(EquivalentAddressGroup::new).toList();
+	}
+
+	@Override
+	protected boolean isAvailable() {
+		return true;
+	}
+
+	@Override
+	protected int priority() {
+		return 5;
+	}
+
+	@Override
+	public String getDefaultScheme() {
+		return SCHEME;
+	}
+
+	@Override
+	public Collection<Class<? extends SocketAddress>> getProducedSocketAddressTypes() {
+		return Collections.singleton(InetSocketAddress.class);
+	}
+
+	@Override
+	public NameResolver newNameResolver(URI targetUri, NameResolver.Args args) {
+		if (!SCHEME.equals(targetUri.getScheme())) {
+			return null;
+		}
+		String authority = targetUri.getPath() == null ? "" : targetUri.getPath().replaceFirst("^/", "");
+		return new NameResolver() {
+			@Override
+			public String getServiceAuthority() {
+				return authority;
+			}
+
+			@Override
+			public void start(Listener2 listener) {
+				listener.onResult(ResolutionResult.newBuilder().setAddresses(addressGroups).setAttributes(Attributes.EMPTY).build());
+			}
+
+			@Override
+			public void shutdown() {
+			}
+		};
+	}
+}
@@ -0,0 +1,217 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+import com.google.protobuf.UnsafeByteOperations;
+import io.grpc.*;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Protobuf marshaller that parses messages straight out of the transport's buffers instead of copying them to the heap.
+ * When the transport hands over a markable {@link Detachable} stream backed by {@link HasByteBuffer} buffers, the
+ * buffers are detached from the transport, marked so that none is freed while being walked, and parsed with aliasing, so {@code bytes} fields become {@link ByteString}s pointing
+ * into them. The buffers then belong to the parsed message and stay alive until {@link #release(MessageLite)} is called,
+ * after which the aliased fields must not be read anymore.
+ * Messages are serialized by writing them directly into the transport's output stream, without building a byte array first.
+ *
+ * @param <T> The message type.
+ */
+@Slf4j
+public class ZeroCopyMarshaller<T extends MessageLite> implements MethodDescriptor.Marshaller<T> {
+	private final Parser<T> parser;
+	private final Map<T, InputStream> retainedBuffers = Collections.synchronizedMap(new IdentityHashMap<>());
+
+	/**
+	 * Constructs a new marshaller.
+	 *
+	 * @param defaultInstance The default instance of the message type.
+	 */
+	@SuppressWarnings("unchecked")
+	public ZeroCopyMarshaller(T defaultInstance) {
+		this.parser = (Parser<T>) defaultInstance.getParserForType();
+	}
+
+	@Override
+	public InputStream stream(T value) {
+		return new MessageInputStream(value);
+	}
+
+	@Override
+	public T parse(InputStream stream) {
+		try {
+			if (stream instanceof Detachable detachable && stream instanceof HasByteBuffer hasByteBuffer && hasByteBuffer.byteBufferSupported() && stream.markSupported()) {
+				return parseDetached(detachable.detach());
+			}
+			// The transport cannot expose its buffers, fall back to a regular copying parse
+			return parser.parseFrom(stream);
+		} catch (IOException e) {
+			throw Status.INTERNAL.withDescription("Invalid protobuf byte sequence").withCause(e).asRuntimeException();
+		}
+	}
+
+	/**
+	 * Releases the transport buffers the message was parsed from. Does nothing for messages parsed by copying.
+	 *
+	 * @param message The message returned by {@link #parse(InputStream)}.
+	 */
+	public void release(T message) {
+		InputStream detached = retainedBuffers.remove(message);
+		if (detached != null) {
+			try {
+				detached.close();
+			} catch (IOException e) {
+				log.warn("Failed to release buffers: " + e);
+			}
+		}
+	}
+
+	private T parseDetached(InputStream detached) throws IOException {
+		boolean retained = false;
+		try {
+			// Reading past a buffer lets the transport free it, the mark keeps every buffer until the stream is closed
+			detached.mark(Integer.MAX_VALUE);
+			// Wrap every buffer of the stream without copying, a single buffer stays a flat ByteString
+			ByteString bytes = ByteString.EMPTY;
+			while (detached.available() > 0) {
+				ByteBuffer buffer = ((HasByteBuffer) detached).getByteBuffer();
+				bytes = bytes.concat(UnsafeByteOperations.unsafeWrap(buffer));
+				detached.skip(buffer.remaining());
+			}
+			CodedInputStream codedInputStream = bytes.newCodedInput();
+			codedInputStream.enableAliasing(true);
+			T message = parser.parseFrom(codedInputStream);
+			retainedBuffers.put(message, detached);
+			retained = true;
+			return message;
+		} finally {
+			if (!retained) {
+				detached.close();
+			}
+		}
+	}
+
+	/**
+	 * Returns a copy of a service definition in which one method uses zero-copy marshallers.
+	 * The request buffers of that method are released once the call completes or is cancelled, so the service must not
+	 * keep aliased fields of the request beyond the call. Replies sent during the call are already serialized by then.
+	 *
+	 * @param serviceDefinition  The service definition.
+	 * @param methodDescriptor   The method to use the marshallers for.
+	 * @param requestMarshaller  The request marshaller.
+	 * @param responseMarshaller The response marshaller.
+	 *
+	 * @return The service definition with the method replaced.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <ReqT extends MessageLite, RespT extends MessageLite> ServerServiceDefinition useFor(ServerServiceDefinition serviceDefinition, MethodDescriptor<ReqT, RespT> methodDescriptor, ZeroCopyMarshaller<ReqT> requestMarshaller, ZeroCopyMarshaller<RespT> responseMarshaller) {
+		// A new service descriptor is built from the methods, the original one holds the default method descriptor
+		ServerServiceDefinition.Builder builder = ServerServiceDefinition.builder(serviceDefinition.getServiceDescriptor().getName());
+		for (ServerMethodDefinition<?, ?> serverMethodDefinition : serviceDefinition.getMethods()) {
+			if (!serverMethodDefinition.getMethodDescriptor().getFullMethodName().equals(methodDescriptor.getFullMethodName())) {
+				builder.addMethod(serverMethodDefinition);
+				continue;
+			}
+			ServerCallHandler<ReqT, RespT> serverCallHandler = (ServerCallHandler<ReqT, RespT>) serverMethodDefinition.getServerCallHandler();
+			builder.addMethod(methodDescriptor.toBuilder(requestMarshaller, responseMarshaller).build(), (call, headers) -> new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(serverCallHandler.startCall(call, headers)) {
+				private final List<ReqT> requests = new ArrayList<>();
+
+				@Override
+				public void onMessage(ReqT message) {
+					requests.add(message);
+					super.onMessage(message);
+				}
+
+				@Override
+				public void onCancel() {
+					super.onCancel();
+					releaseRequests();
+				}
+
+				@Override
+				public void onComplete() {
+					super.onComplete();
+					releaseRequests();
+				}
+
+				private void releaseRequests() {
+					requests.forEach(requestMarshaller::release);
+					requests.clear();
+				}
+			});
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Stream of a message that the transport drains by letting the message write itself into the transport's output stream.
+	 */
+	private static class MessageInputStream extends InputStream implements Drainable, KnownLength {
+		private MessageLite message;
+		private ByteArrayInputStream fallback;
+
+		MessageInputStream(MessageLite message) {
+			this.message = message;
+		}
+
+		@Override
+		public int drainTo(OutputStream target) throws IOException {
+			int written;
+			if (message != null) {
+				written = message.getSerializedSize();
+				message.writeTo(target);
+				message = null;
+			} else if (fallback != null) {
+				written = (int) fallback.transferTo(target);
+				fallback = null;
+			} else {
+				written = 0;
+			}
+			return written;
+		}
+
+		@Override
+		public int read() {
+			return toFallback() == null ? -1 : fallback.read();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			return toFallback() == null ? -1 : fallback.read(b, off, len);
+		}
+
+		@Override
+		public int available() {
+			if (message != null) {
+				return message.getSerializedSize();
+			}
+			return fallback == null ? 0 : fallback.available();
+		}
+
+		/**
+		 * Only transports that cannot drain read the stream, they get a serialized copy.
+		 */
+		private ByteArrayInputStream toFallback() {
+			if (message != null) {
+				fallback = new ByteArrayInputStream(message.toByteArray());
+				message = null;
+			}
+			return fallback;
+		}
+	}
+}
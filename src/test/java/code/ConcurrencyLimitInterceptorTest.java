@@ -0,0 +1,122 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import io.grpc.GreeterGrpc;
+import io.grpc.Hello;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrencyLimitInterceptorTest {
+	// Low enough that client, server and load generator share a single core without it becoming the bottleneck
+	private static final int WORKERS = 1;
+	private static final long WORK_MILLIS = 20;
+
+	/**
+	 * A service that can only do {@link #WORKERS} calls of {@link #WORK_MILLIS} at a time, further calls queue up.
+	 */
+	private static class BoundedGreeterService extends GreeterGrpc.GreeterImplBase {
+		private final ExecutorService workers = Executors.newFixedThreadPool(WORKERS);
+
+		@Override
+		public void sayHello(Hello.HelloRequest request, StreamObserver<Hello.HelloReply> responseObserver) {
+			workers.execute(() -> {
+				try {
+					TimeUnit.MILLISECONDS.sleep(WORK_MILLIS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				responseObserver.onNext(Hello.HelloReply.newBuilder().setMessage("Hello, " + request.getName()).build());
+				responseObserver.onCompleted();
+			});
+		}
+	}
+
+	private static ConcurrencyLimitInterceptor newInterceptor() {
+		return new ConcurrencyLimitInterceptor(
+				() -> AdaptiveConcurrencyLimiter.builder().initialLimit(20).minLimit(2).maxLimit(200).adaptive(true).windowSize(5).build(),
+				() -> AdaptiveConcurrencyLimiter.builder().initialLimit(20).build());
+	}
+
+	/**
+	 * Driving the server at more than twice its capacity must shed the excess while the admitted calls keep a latency
+	 * bounded by the limit instead of growing with an ever longer queue.
+	 */
+	@Test
+	void overdrivenServerKeepsAdmittedLatencyBounded() throws Exception {
+		BoundedGreeterService service = new BoundedGreeterService();
+		ConcurrencyLimitInterceptor interceptor = newInterceptor();
+		GRpcServerLauncher serverLauncher = GRpcServerLauncher.builder().port(0).bindableService(service).interceptor(interceptor).build();
+		int port = serverLauncher.start().getPort();
+		GRpcClientLauncher client = new GRpcClientLauncher(port);
+		try {
+			// One call at a time first, so the limiter learns the latency of the idle server
+			GRpcLoadGenerator.builder().client(client).rpcShape(GRpcLoadGenerator.RpcShape.UNARY).concurrency(1).duration(1).build().run();
+			long capacityRps = WORKERS * TimeUnit.SECONDS.toMillis(1) / WORK_MILLIS;
+			GRpcLoadGenerator loadGenerator = GRpcLoadGenerator.builder()
+					.client(client)
+					.rpcShape(GRpcLoadGenerator.RpcShape.UNARY)
+					.targetRps((int) (capacityRps * 5 / 2))
+					.duration(3)
+					.warmup(1)
+					.build();
+			loadGenerator.run();
+
+			assertTrue(loadGenerator.getRejected().sum() > 0, "the overdriven server rejected nothing");
+			assertEquals(0, loadGenerator.getFailures().sum());
+			// Without the limit the excess 1.5x capacity piles up for 4 s, a queue of several seconds, the limit keeps it to a few calls
+			long p99Millis = TimeUnit.NANOSECONDS.toMillis(loadGenerator.getServiceTime().getValueAtPercentile(99));
+			assertTrue(p99Millis < 1000, "admitted p99 of " + p99Millis + " ms");
+		} finally {
+			client.getManagedChannel().shutdownNow();
+			serverLauncher.getServer().shutdownNow();
+			serverLauncher.awaitTermination(5, TimeUnit.SECONDS);
+			service.workers.shutdownNow();
+		}
+	}
+
+	/**
+	 * A deadline expiring on the server arrives as a cancellation and must still lower the limit like a timeout.
+	 */
+	@Test
+	void expiredDeadlineLowersTheLimit() throws Exception {
+		GreeterGrpc.GreeterImplBase hangingService = new GreeterGrpc.GreeterImplBase() {
+			@Override
+			public void sayHello(Hello.HelloRequest request, StreamObserver<Hello.HelloReply> responseObserver) {
+				// Never answers, the call only ends with its deadline
+			}
+		};
+		ConcurrencyLimitInterceptor interceptor = newInterceptor();
+		GRpcServerLauncher serverLauncher = GRpcServerLauncher.builder().port(0).bindableService(hangingService).interceptor(interceptor).build();
+		int port = serverLauncher.start().getPort();
+		GRpcClientLauncher client = new GRpcClientLauncher(port);
+		try {
+			Hello.HelloRequest request = Hello.HelloRequest.newBuilder().setName("hello").build();
+			StatusRuntimeException exception = assertThrows(StatusRuntimeException.class,
+					() -> client.getGreeterBlockingStub().withDeadlineAfter(50, TimeUnit.MILLISECONDS).sayHello(request));
+			assertEquals(Status.Code.DEADLINE_EXCEEDED, exception.getStatus().getCode());
+
+			AdaptiveConcurrencyLimiter limiter = interceptor.getLimiter(GreeterGrpc.getSayHelloMethod().getFullMethodName());
+			for (int i = 0; i < 100 && limiter.getInFlight().get() > 0; ++i) {
+				TimeUnit.MILLISECONDS.sleep(10);
+			}
+			assertEquals(0, limiter.getInFlight().get());
+			assertEquals(18, limiter.getLimit());
+		} finally {
+			client.getManagedChannel().shutdownNow();
+			serverLauncher.getServer().shutdownNow();
+			serverLauncher.awaitTermination(5, TimeUnit.SECONDS);
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import io.grpc.ForwardingServerCall;
+import io.grpc.GreeterGrpc;
+import io.grpc.Hello;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.health.v1.HealthCheckRequest;
+import io.grpc.health.v1.HealthCheckResponse;
+import io.grpc.health.v1.HealthGrpc;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GRpcServerLauncherTest {
+	/**
+	 * A client that stops requesting after its initial window must stall the server stream: the server only produces the
+	 * replies that fit into the HTTP/2 windows instead of the whole stream.
+	 */
+	@Test
+	void sayHello3ProducesOnlyWhatTheSlowClientCanTake() throws Exception {
+		int replyCount = 1_000_000;
+		int flowControlWindow = 64 * 1024;
+		AtomicInteger produced = new AtomicInteger();
+		ServerInterceptor countingInterceptor = new ServerInterceptor() {
+			@Override
+			public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+				return next.startCall(new ForwardingServerCall.SimpleForwardingServerCall<>(call) {
+					@Override
+					public void sendMessage(RespT message) {
+						produced.incrementAndGet();
+						super.sendMessage(message);
+					}
+				}, headers);
+			}
+		};
+		GRpcServerLauncher serverLauncher = GRpcServerLauncher.builder()
+				.port(0)
+				.bindableService(new GRpcServerLauncher.GreeterServiceImpl())
+				.nettyTransportOptions(NettyTransportOptions.builder().flowControlWindow(flowControlWindow).build())
+				.interceptor(countingInterceptor)
+				.build();
+		int port = serverLauncher.start().getPort();
+		GRpcClientLauncher client = GRpcClientLauncher.builder()
+				.name("127.0.0.1")
+				.port(port)
+				.nettyTransportOptions(NettyTransportOptions.builder().flowControlWindow(flowControlWindow).build())
+				.build();
+		// The consumer never returns from the first reply, so the client never requests more than its initial window
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			Hello.HelloRequest request = Hello.HelloRequest.newBuilder().setName("hello").setSex("man").setReplyCount(replyCount).build();
+			CompletableFuture<Integer> done = client.sayHello3FlowControlled(request, 4, helloReply -> {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+
+			// Wait until the stream has started and the server has stopped producing
+			for (int i = 0; i < 100 && produced.get() == 0; ++i) {
+				TimeUnit.MILLISECONDS.sleep(50);
+			}
+			int last = -1;
+			for (int i = 0; i < 50 && produced.get() != last; ++i) {
+				last = produced.get();
+				TimeUnit.MILLISECONDS.sleep(200);
+			}
+			assertEquals(last, produced.get(), "server still producing replies");
+			// Roughly 20 bytes per framed reply, the client window and the server's 32 KiB ready threshold bound the stream
+			int bound = 2 * (flowControlWindow + 32 * 1024) / 20;
+			assertTrue(produced.get() > 0 && produced.get() < bound, "produced " + produced.get() + " replies, expected fewer than " + bound);
+			assertFalse(done.isDone(), "stream completed although the client stopped reading");
+		} finally {
+			release.countDown();
+			client.getManagedChannel().shutdownNow();
+			serverLauncher.getServer().shutdownNow();
+			serverLauncher.awaitTermination(5, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * An open health watch stream never ends on its own, draining must only wait for the Greeter calls and then cancel it.
+	 */
+	@Test
+	void stopNowDoesNotWaitForHealthWatches() throws Exception {
+		GRpcServerLauncher serverLauncher = GRpcServerLauncher.builder()
+				.port(0)
+				.bindableService(new GRpcServerLauncher.GreeterServiceImpl())
+				.drainTimeoutMillis(TimeUnit.SECONDS.toMillis(20))
+				.build();
+		int port = serverLauncher.start().getPort();
+		GRpcClientLauncher client = new GRpcClientLauncher(port);
+		try {
+			CountDownLatch watching = new CountDownLatch(1);
+			HealthGrpc.newStub(client.getManagedChannel()).watch(HealthCheckRequest.getDefaultInstance(), new StreamObserver<HealthCheckResponse>() {
+				@Override
+				public void onNext(HealthCheckResponse healthCheckResponse) {
+					watching.countDown();
+				}
+
+				@Override
+				public void onError(Throwable throwable) {
+				}
+
+				@Override
+				public void onCompleted() {
+				}
+			});
+			assertTrue(watching.await(5, TimeUnit.SECONDS), "health watch did not start");
+			client.getGreeterBlockingStub().sayHello(Hello.HelloRequest.newBuilder().setName("hello").setSex("man").build());
+
+			long start = System.nanoTime();
+			serverLauncher.stopNow();
+			long stopMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			assertTrue(stopMillis < TimeUnit.SECONDS.toMillis(10), "stopNow took " + stopMillis + " ms");
+			assertTrue(serverLauncher.getServer().isTerminated());
+		} finally {
+			client.getManagedChannel().shutdownNow();
+			serverLauncher.getServer().shutdownNow();
+			serverLauncher.awaitTermination(5, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * The server is bound before the warmup, the health service must report NOT_SERVING until the warmup has finished.
+	 */
+	@Test
+	void healthReportsServingOnlyAfterTheWarmup() throws Exception {
+		CountDownLatch warmupStarted = new CountDownLatch(1);
+		CountDownLatch releaseWarmup = new CountDownLatch(1);
+		GRpcServerLauncher.GreeterServiceImpl service = new GRpcServerLauncher.GreeterServiceImpl() {
+			@Override
+			public void sayHello(Hello.HelloRequest request, StreamObserver<Hello.HelloReply> responseObserver) {
+				if (GreeterWarmup.isWarmupCall()) {
+					warmupStarted.countDown();
+					try {
+						releaseWarmup.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				super.sayHello(request, responseObserver);
+			}
+		};
+		int port;
+		try (ServerSocket serverSocket = new ServerSocket(0)) {
+			port = serverSocket.getLocalPort();
+		}
+		GRpcServerLauncher serverLauncher = GRpcServerLauncher.builder()
+				.port(port)
+				.bindableService(service)
+				.warmupIterations(1)
+				.build();
+		GRpcClientLauncher client = new GRpcClientLauncher(port);
+		try {
+			CompletableFuture<Server> started = CompletableFuture.supplyAsync(() -> {
+				try {
+					return serverLauncher.start();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			assertTrue(warmupStarted.await(10, TimeUnit.SECONDS), "warmup did not start");
+			HealthGrpc.HealthBlockingStub healthBlockingStub = HealthGrpc.newBlockingStub(client.getManagedChannel());
+			String greeterService = GreeterGrpc.getServiceDescriptor().getName();
+			assertEquals(HealthCheckResponse.ServingStatus.NOT_SERVING, healthBlockingStub.check(HealthCheckRequest.getDefaultInstance()).getStatus());
+			assertEquals(HealthCheckResponse.ServingStatus.NOT_SERVING, healthBlockingStub.check(HealthCheckRequest.newBuilder().setService(greeterService).build()).getStatus());
+
+			releaseWarmup.countDown();
+			started.get(30, TimeUnit.SECONDS);
+			assertEquals(HealthCheckResponse.ServingStatus.SERVING, healthBlockingStub.check(HealthCheckRequest.getDefaultInstance()).getStatus());
+			assertEquals(HealthCheckResponse.ServingStatus.SERVING, healthBlockingStub.check(HealthCheckRequest.newBuilder().setService(greeterService).build()).getStatus());
+		} finally {
+			releaseWarmup.countDown();
+			client.getManagedChannel().shutdownNow();
+			serverLauncher.getServer().shutdownNow();
+			serverLauncher.awaitTermination(5, TimeUnit.SECONDS);
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import io.grpc.Hello;
+import org.HdrHistogram.Recorder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GreeterServiceConfigTest {
+	private static final Hello.HelloRequest REQUEST = Hello.HelloRequest.newBuilder().setName("hello").setSex("man").build();
+	private static final int BACKEND_COUNT = 3;
+	private static final long SLOW_BACKEND_DELAY_MILLIS = 50;
+	private static final int CALLERS = 4;
+	private static final int CALLS_PER_CALLER = 100;
+
+	private final List<GRpcServerLauncher> serverLaunchers = new ArrayList<>();
+	private final List<InetSocketAddress> backends = new ArrayList<>();
+
+	/**
+	 * Starts the backends, the first one delaying every call.
+	 *
+	 * @throws IOException If a server could not be started.
+	 */
+	@BeforeEach
+	void setUp() throws IOException {
+		for (int i = 0; i < BACKEND_COUNT; ++i) {
+			GRpcServerLauncher.GRpcServerLauncherBuilder serverLauncherBuilder = GRpcServerLauncher.builder()
+					.port(0)
+					.bindableService(new GRpcServerLauncher.GreeterServiceImpl());
+			if (i == 0) {
+				serverLauncherBuilder.interceptor(new DelayInterceptor(SLOW_BACKEND_DELAY_MILLIS));
+			}
+			GRpcServerLauncher serverLauncher = serverLauncherBuilder.build();
+			backends.add(new InetSocketAddress("127.0.0.1", serverLauncher.start().getPort()));
+			serverLaunchers.add(serverLauncher);
+		}
+	}
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		for (GRpcServerLauncher serverLauncher : serverLaunchers) {
+			serverLauncher.getServer().shutdownNow();
+			serverLauncher.awaitTermination(5, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	void roundRobinWithoutHedgingWaitsForTheSlowBackend() throws Exception {
+		long p99Millis = sayHelloP99Millis(GreeterServiceConfig.create("round_robin", 1, 0));
+		assertTrue(p99Millis >= SLOW_BACKEND_DELAY_MILLIS, "p99 of " + p99Millis + " ms although a third of the calls hit the slow backend");
+	}
+
+	@Test
+	void leastRequestWithHedgingKeepsP99BelowTheSlowBackend() throws Exception {
+		long p99Millis = sayHelloP99Millis(GreeterServiceConfig.create(GreeterServiceConfig.LEAST_REQUEST, 3, 5));
+		assertTrue(p99Millis < SLOW_BACKEND_DELAY_MILLIS, "p99 of " + p99Millis + " ms");
+	}
+
+	/**
+	 * Sends SayHello calls from several callers through a client spreading them over the backends.
+	 *
+	 * @param serviceConfig The service config of the client.
+	 *
+	 * @return The 99th percentile of the call latency in milliseconds.
+	 */
+	private long sayHelloP99Millis(Map<String, ?> serviceConfig) throws Exception {
+		GRpcClientLauncher client = GRpcClientLauncher.builder()
+				.name("greeter")
+				.backends(backends)
+				.serviceConfig(serviceConfig)
+				.build();
+		ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+		try {
+			Recorder recorder = new Recorder(3);
+			// The first round connects to every backend and warms up the client and the servers, only the second is measured
+			for (int round = 0; round < 2; ++round) {
+				recorder.reset();
+				List<Future<?>> futures = new ArrayList<>();
+				for (int i = 0; i < CALLERS; ++i) {
+					futures.add(callers.submit(() -> {
+						for (int j = 0; j < CALLS_PER_CALLER; ++j) {
+							long start = System.nanoTime();
+							client.getGreeterBlockingStub().sayHello(REQUEST);
+							recorder.recordValue(System.nanoTime() - start);
+						}
+					}));
+				}
+				for (Future<?> future : futures) {
+					future.get();
+				}
+			}
+			return TimeUnit.NANOSECONDS.toMillis(recorder.getIntervalHistogram().getValueAtPercentile(99));
+		} finally {
+			callers.shutdownNow();
+			client.getManagedChannel().shutdownNow();
+			client.awaitTermination(5, TimeUnit.SECONDS);
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import io.grpc.CallOptions;
+import io.grpc.GreeterGrpc;
+import io.grpc.Hello;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.ClientCalls;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetricsServerInterceptorTest {
+	/**
+	 * Calls to methods the server does not serve must not add entries to the registry, whatever name the client sends.
+	 */
+	@Test
+	void unknownMethodsAreNotRecorded() throws Exception {
+		RpcMetrics rpcMetrics = new RpcMetrics("server");
+		GRpcServerLauncher serverLauncher = GRpcServerLauncher.builder()
+				.port(0)
+				.bindableService(new GRpcServerLauncher.GreeterServiceImpl())
+				.rpcMetrics(rpcMetrics)
+				.build();
+		GRpcClientLauncher client = new GRpcClientLauncher(serverLauncher.start().getPort());
+		try {
+			int servedMethods = GreeterGrpc.getServiceDescriptor().getMethods().size();
+			assertEquals(servedMethods, rpcMetrics.getMethods().size());
+			Hello.HelloRequest request = Hello.HelloRequest.newBuilder().setName("hello").build();
+			for (int i = 0; i < 50; ++i) {
+				MethodDescriptor<Hello.HelloRequest, Hello.HelloReply> unknownMethod = MethodDescriptor.<Hello.HelloRequest, Hello.HelloReply>newBuilder()
+						.setType(MethodDescriptor.MethodType.UNARY)
+						.setFullMethodName("Nope/m" + i + "\"} 1 x")
+						.setRequestMarshaller(ProtoUtils.marshaller(Hello.HelloRequest.getDefaultInstance()))
+						.setResponseMarshaller(ProtoUtils.marshaller(Hello.HelloReply.getDefaultInstance()))
+						.build();
+				StatusRuntimeException exception = assertThrows(StatusRuntimeException.class,
+						() -> ClientCalls.blockingUnaryCall(client.getManagedChannel(), unknownMethod, CallOptions.DEFAULT, request));
+				assertEquals(Status.Code.UNIMPLEMENTED, exception.getStatus().getCode());
+			}
+			client.getGreeterBlockingStub().sayHello(request);
+			assertEquals(servedMethods, rpcMetrics.getMethods().size());
+			assertEquals(1, rpcMetrics.getMethod(GreeterGrpc.getSayHelloMethod().getFullMethodName()).getStarted());
+		} finally {
+			client.getManagedChannel().shutdownNow();
+			serverLauncher.getServer().shutdownNow();
+			serverLauncher.awaitTermination(5, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Quotes, backslashes and line feeds in a method name must not break out of the label value.
+	 */
+	@Test
+	void labelValuesAreEscaped() {
+		RpcMetrics rpcMetrics = new RpcMetrics("client");
+		rpcMetrics.forMethod("Svc\\1/m\"} 1\nx").callStarted();
+		StringBuilder out = new StringBuilder();
+		rpcMetrics.writePrometheus(out);
+		assertTrue(out.toString().contains("grpc_client_started_total{grpc_service=\"Svc\\\\1\",grpc_method=\"m\\\"} 1\\nx\"} 1\n"), out.toString());
+	}
+}
@@ -0,0 +1,158 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import io.grpc.GreeterGrpc;
+import io.grpc.Hello;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderedParallelStreamObserverTest {
+	/**
+	 * A client that keeps sending but never reads must stall the stream once the window is full of unsent replies,
+	 * instead of the server buffering every reply it produces.
+	 */
+	@Test
+	void unreadRepliesCountAgainstTheWindow() throws Exception {
+		int window = 8;
+		int flowControlWindow = 64 * 1024;
+		String largeMessage = "x".repeat(16 * 1024);
+		AtomicInteger produced = new AtomicInteger();
+		ExecutorService bidiExecutor = Executors.newFixedThreadPool(4);
+		GreeterGrpc.GreeterImplBase service = new GreeterGrpc.GreeterImplBase() {
+			@Override
+			public StreamObserver<Hello.HelloRequest> sayHello4(StreamObserver<Hello.HelloReply> responseObserver) {
+				return new OrderedParallelStreamObserver<>(responseObserver, bidiExecutor, window, (value, sequence) -> {
+					produced.incrementAndGet();
+					return Hello.HelloReply.newBuilder().setMessage(largeMessage).build();
+				});
+			}
+		};
+		GRpcServerLauncher serverLauncher = GRpcServerLauncher.builder()
+				.port(0)
+				.bindableService(service)
+				.nettyTransportOptions(NettyTransportOptions.builder().flowControlWindow(flowControlWindow).build())
+				.build();
+		int port = serverLauncher.start().getPort();
+		GRpcClientLauncher client = GRpcClientLauncher.builder()
+				.name("127.0.0.1")
+				.port(port)
+				.nettyTransportOptions(NettyTransportOptions.builder().flowControlWindow(flowControlWindow).build())
+				.build();
+		try {
+			Hello.HelloRequest request = Hello.HelloRequest.newBuilder().setName("hello").setSex("man").build();
+			AtomicInteger sent = new AtomicInteger();
+			client.getGreeterFutureStub().sayHello4(new ClientResponseObserver<Hello.HelloRequest, Hello.HelloReply>() {
+				@Override
+				public void beforeStart(ClientCallStreamObserver<Hello.HelloRequest> requestStream) {
+					// Never asks for a reply, and sends whenever the server takes more requests
+					requestStream.disableAutoRequestWithInitial(0);
+					requestStream.setOnReadyHandler(() -> {
+						while (requestStream.isReady()) {
+							requestStream.onNext(request);
+							sent.incrementAndGet();
+						}
+					});
+				}
+
+				@Override
+				public void onNext(Hello.HelloReply helloReply) {
+				}
+
+				@Override
+				public void onError(Throwable throwable) {
+				}
+
+				@Override
+				public void onCompleted() {
+				}
+			});
+
+			TimeUnit.SECONDS.sleep(3);
+			// The window, plus the replies the client and server HTTP/2 windows and the server's ready threshold can hold
+			int bound = window + 2 * (flowControlWindow + 32 * 1024) / largeMessage.length();
+			assertTrue(sent.get() > 0);
+			assertTrue(produced.get() <= bound, "produced " + produced.get() + " replies, expected at most " + bound);
+		} finally {
+			client.getManagedChannel().shutdownNow();
+			serverLauncher.getServer().shutdownNow();
+			serverLauncher.awaitTermination(5, TimeUnit.SECONDS);
+			bidiExecutor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Handlers finishing out of order on several threads must still produce the replies in request order, and the stream
+	 * must only complete after the last reply.
+	 */
+	@Test
+	void repliesFollowRequestOrder() throws Exception {
+		int requests = 300;
+		ExecutorService bidiExecutor = Executors.newFixedThreadPool(4);
+		GreeterGrpc.GreeterImplBase service = new GreeterGrpc.GreeterImplBase() {
+			@Override
+			public StreamObserver<Hello.HelloRequest> sayHello4(StreamObserver<Hello.HelloReply> responseObserver) {
+				return new OrderedParallelStreamObserver<>(responseObserver, bidiExecutor, 16, (value, sequence) -> {
+					try {
+						TimeUnit.MICROSECONDS.sleep(ThreadLocalRandom.current().nextInt(5_000));
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					return Hello.HelloReply.newBuilder().setMessage(value.getName()).build();
+				});
+			}
+		};
+		GRpcServerLauncher serverLauncher = GRpcServerLauncher.builder().port(0).bindableService(service).build();
+		GRpcClientLauncher client = new GRpcClientLauncher(serverLauncher.start().getPort());
+		try {
+			List<String> replies = Collections.synchronizedList(new ArrayList<>());
+			CompletableFuture<Integer> repliesAtCompletion = new CompletableFuture<>();
+			StreamObserver<Hello.HelloRequest> requestObserver = client.getGreeterFutureStub().sayHello4(new StreamObserver<Hello.HelloReply>() {
+				@Override
+				public void onNext(Hello.HelloReply helloReply) {
+					replies.add(helloReply.getMessage());
+				}
+
+				@Override
+				public void onError(Throwable throwable) {
+					repliesAtCompletion.completeExceptionally(throwable);
+				}
+
+				@Override
+				public void onCompleted() {
+					repliesAtCompletion.complete(replies.size());
+				}
+			});
+			List<String> expected = new ArrayList<>();
+			for (int i = 0; i < requests; ++i) {
+				expected.add(Integer.toString(i));
+				requestObserver.onNext(Hello.HelloRequest.newBuilder().setName(Integer.toString(i)).build());
+			}
+			requestObserver.onCompleted();
+
+			assertEquals(requests, repliesAtCompletion.get(30, TimeUnit.SECONDS), "replies received before the stream completed");
+			assertEquals(expected, replies);
+		} finally {
+			client.getManagedChannel().shutdownNow();
+			serverLauncher.getServer().shutdownNow();
+			serverLauncher.awaitTermination(5, TimeUnit.SECONDS);
+			bidiExecutor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import io.grpc.GreeterGrpc;
+import io.grpc.Hello;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResponseCacheInterceptorTest {
+	private static ResponseCacheInterceptor newCache(int maxEntries, long maxBytes) {
+		return ResponseCacheInterceptor.builder()
+				.cacheableMethod(GreeterGrpc.getSayHelloMethod().getFullMethodName())
+				.maxEntries(maxEntries)
+				.maxBytes(maxBytes)
+				.build();
+	}
+
+	/**
+	 * The budgets hold for the whole cache: fewer entries than segments stay a hard limit, and a response larger than a
+	 * segment's share of the byte budget is still cached when it fits the budget.
+	 */
+	@Test
+	void budgetsHoldForTheWholeCache() throws Exception {
+		ResponseCacheInterceptor responseCache = newCache(4, 16 * 1024);
+		GRpcServerLauncher serverLauncher = GRpcServerLauncher.builder()
+				.port(0)
+				.bindableService(new GRpcServerLauncher.GreeterServiceImpl())
+				.interceptor(responseCache)
+				.build();
+		GRpcClientLauncher client = new GRpcClientLauncher(serverLauncher.start().getPort());
+		try {
+			for (int i = 0; i < 20; ++i) {
+				client.getGreeterBlockingStub().sayHello(Hello.HelloRequest.newBuilder().setName("hello" + i).build());
+				assertTrue(responseCache.getEntryCount() <= 4, responseCache.getEntryCount() + " entries cached");
+			}
+			assertEquals(4, responseCache.getEntryCount());
+			assertEquals(16, responseCache.getEvictionCount());
+
+			// Request and response together take about 4 KiB, four times a sixteenth of the byte budget
+			Hello.HelloRequest large = Hello.HelloRequest.newBuilder().setName("x".repeat(2048)).build();
+			client.getGreeterBlockingStub().sayHello(large);
+			long hits = responseCache.getHitCount();
+			client.getGreeterBlockingStub().sayHello(large);
+			assertEquals(hits + 1, responseCache.getHitCount());
+			assertTrue(responseCache.getByteCount() <= responseCache.getMaxBytes());
+		} finally {
+			client.getManagedChannel().shutdownNow();
+			serverLauncher.getServer().shutdownNow();
+			serverLauncher.awaitTermination(5, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	void nonPositiveBudgetsAreRejected() {
+		assertThrows(IllegalArgumentException.class, () -> newCache(0, 1024));
+		assertThrows(IllegalArgumentException.class, () -> newCache(16, 0));
+	}
+}
@@ -0,0 +1,147 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import io.grpc.Hello;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SayHelloCoalescerTest {
+	private GRpcServerLauncher serverLauncher;
+	private GRpcClientLauncher client;
+	// The number of requests in every batch the server received
+	private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+	private volatile Status batchFailure;
+
+	/**
+	 * Starts a server recording the size of every batch, which fails the batches while {@link #batchFailure} is set.
+	 */
+	private void start() throws IOException {
+		GRpcServerLauncher.GreeterServiceImpl service = new GRpcServerLauncher.GreeterServiceImpl() {
+			@Override
+			public void sayHelloBatch(Hello.HelloBatchRequest request, StreamObserver<Hello.HelloBatchReply> responseObserver) {
+				batchSizes.add(request.getRequestsCount());
+				if (batchFailure != null) {
+					responseObserver.onError(batchFailure.asRuntimeException());
+					return;
+				}
+				super.sayHelloBatch(request, responseObserver);
+			}
+		};
+		serverLauncher = GRpcServerLauncher.builder().port(0).bindableService(service).build();
+		client = new GRpcClientLauncher(serverLauncher.start().getPort());
+	}
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		client.getManagedChannel().shutdownNow();
+		serverLauncher.getServer().shutdownNow();
+		serverLauncher.awaitTermination(5, TimeUnit.SECONDS);
+	}
+
+	private static Hello.HelloRequest request(int i) {
+		return Hello.HelloRequest.newBuilder().setName("caller" + i).setSex("man").build();
+	}
+
+	/**
+	 * A full batch is sent right away instead of waiting for the delay, and every caller gets the reply to its own request.
+	 */
+	@Test
+	void fullBatchesAreSentWithoutWaitingForTheDelay() throws Exception {
+		start();
+		try (SayHelloCoalescer sayHelloCoalescer = client.newSayHelloCoalescer(4, 1, TimeUnit.HOURS)) {
+			List<CompletableFuture<Hello.HelloReply>> replies = new ArrayList<>();
+			for (int i = 0; i < 8; ++i) {
+				replies.add(sayHelloCoalescer.sayHello(request(i)));
+			}
+			for (int i = 0; i < 8; ++i) {
+				assertEquals("Hello, caller" + i + " man", replies.get(i).get(10, TimeUnit.SECONDS).getMessage());
+			}
+			assertEquals(List.of(4, 4), batchSizes);
+		}
+	}
+
+	/**
+	 * A batch that does not fill up is sent once its first request has waited the delay.
+	 */
+	@Test
+	void partialBatchesAreSentAfterTheDelay() throws Exception {
+		start();
+		long delayMillis = 200;
+		try (SayHelloCoalescer sayHelloCoalescer = client.newSayHelloCoalescer(100, delayMillis, TimeUnit.MILLISECONDS)) {
+			long start = System.nanoTime();
+			List<CompletableFuture<Hello.HelloReply>> replies = new ArrayList<>();
+			for (int i = 0; i < 3; ++i) {
+				replies.add(sayHelloCoalescer.sayHello(request(i)));
+			}
+			TimeUnit.MILLISECONDS.sleep(delayMillis / 4);
+			assertFalse(replies.get(0).isDone(), "partial batch sent before the delay");
+			for (int i = 0; i < 3; ++i) {
+				assertEquals("Hello, caller" + i + " man", replies.get(i).get(10, TimeUnit.SECONDS).getMessage());
+			}
+			assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(delayMillis));
+			assertEquals(List.of(3), batchSizes);
+
+			// The next batch gets its own delay window
+			CompletableFuture<Hello.HelloReply> next = sayHelloCoalescer.sayHello(request(3));
+			assertEquals("Hello, caller3 man", next.get(10, TimeUnit.SECONDS).getMessage());
+			assertEquals(List.of(3, 1), batchSizes);
+		}
+	}
+
+	/**
+	 * A failed batch call fails the future of every caller in the batch with the status of the call.
+	 */
+	@Test
+	void batchFailureReachesEveryCaller() throws Exception {
+		start();
+		batchFailure = Status.UNAVAILABLE.withDescription("batch failed");
+		try (SayHelloCoalescer sayHelloCoalescer = client.newSayHelloCoalescer(5, 1, TimeUnit.HOURS)) {
+			List<CompletableFuture<Hello.HelloReply>> replies = new ArrayList<>();
+			for (int i = 0; i < 5; ++i) {
+				replies.add(sayHelloCoalescer.sayHello(request(i)));
+			}
+			for (CompletableFuture<Hello.HelloReply> reply : replies) {
+				ExecutionException exception = assertThrows(ExecutionException.class, () -> reply.get(10, TimeUnit.SECONDS));
+				StatusRuntimeException cause = assertInstanceOf(StatusRuntimeException.class, exception.getCause());
+				assertEquals(Status.Code.UNAVAILABLE, cause.getStatus().getCode());
+			}
+			assertEquals(List.of(5), batchSizes);
+		}
+	}
+
+	/**
+	 * Closing sends the pending requests, calls made afterwards fail right away without reaching the server.
+	 */
+	@Test
+	void closeFlushesPendingCallsAndRejectsLaterOnes() throws Exception {
+		start();
+		SayHelloCoalescer sayHelloCoalescer = client.newSayHelloCoalescer(100, 1, TimeUnit.HOURS);
+		CompletableFuture<Hello.HelloReply> pending = sayHelloCoalescer.sayHello(request(0));
+		sayHelloCoalescer.close();
+		assertEquals("Hello, caller0 man", pending.get(10, TimeUnit.SECONDS).getMessage());
+
+		CompletableFuture<Hello.HelloReply> rejected = sayHelloCoalescer.sayHello(request(1));
+		ExecutionException exception = assertThrows(ExecutionException.class, () -> rejected.get(1, TimeUnit.SECONDS));
+		assertInstanceOf(IllegalStateException.class, exception.getCause());
+		assertEquals(List.of(1), batchSizes);
+	}
+}
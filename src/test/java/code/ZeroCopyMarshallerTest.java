@@ -0,0 +1,80 @@
+package code;
+
+// Copyright (c) 2024, NoCodeNoLife-cloud. All rights reserved.
+// Author: NoCodeNoLife-cloud
+// stay hungry，stay foolish
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.protobuf.ByteString;
+import io.grpc.CallOptions;
+import io.grpc.GreeterGrpc;
+import io.grpc.Hello;
+import io.grpc.MethodDescriptor;
+import io.grpc.stub.ClientCalls;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ZeroCopyMarshallerTest {
+	private static final int MAX_MESSAGE_SIZE = 4 * 1024 * 1024;
+
+	/**
+	 * Concurrent echoes must come back byte for byte, also for payloads spread over several transport buffers, which the
+	 * transport would free while they are still aliased by the parsed request if they were not retained.
+	 */
+	@Test
+	void concurrentEchoesReturnTheSentPayloads() throws Exception {
+		assertEchoes(400, 1024);
+		assertEchoes(100, 64 * 1024);
+		assertEchoes(8, 2 * 1024 * 1024);
+	}
+
+	private static void assertEchoes(int calls, int payloadSize) throws Exception {
+		ZeroCopyMarshaller<Hello.HelloBlobReply> replyMarshaller = new ZeroCopyMarshaller<>(Hello.HelloBlobReply.getDefaultInstance());
+		MethodDescriptor<Hello.HelloBlobRequest, Hello.HelloBlobReply> methodDescriptor = GreeterGrpc.getSayHelloBlobMethod()
+				.toBuilder(new ZeroCopyMarshaller<>(Hello.HelloBlobRequest.getDefaultInstance()), replyMarshaller)
+				.build();
+		GRpcServerLauncher.GreeterServiceImpl greeterService = new GRpcServerLauncher.GreeterServiceImpl();
+		GRpcServerLauncher serverLauncher = GRpcServerLauncher.builder()
+				.port(0)
+				.bindableService(() -> ZeroCopyMarshaller.useFor(greeterService.bindService(), GreeterGrpc.getSayHelloBlobMethod(),
+						new ZeroCopyMarshaller<>(Hello.HelloBlobRequest.getDefaultInstance()),
+						new ZeroCopyMarshaller<>(Hello.HelloBlobReply.getDefaultInstance())))
+				.nettyTransportOptions(NettyTransportOptions.builder().maxInboundMessageSize(MAX_MESSAGE_SIZE).build())
+				.build();
+		GRpcClientLauncher client = GRpcClientLauncher.builder()
+				.name("127.0.0.1")
+				.port(serverLauncher.start().getPort())
+				.nettyTransportOptions(NettyTransportOptions.builder().maxInboundMessageSize(MAX_MESSAGE_SIZE).build())
+				.build();
+		try {
+			List<ByteString> payloads = new ArrayList<>();
+			List<ListenableFuture<Hello.HelloBlobReply>> futures = new ArrayList<>();
+			for (int i = 0; i < calls; ++i) {
+				byte[] payload = new byte[payloadSize];
+				ThreadLocalRandom.current().nextBytes(payload);
+				payloads.add(ByteString.copyFrom(payload));
+				Hello.HelloBlobRequest request = Hello.HelloBlobRequest.newBuilder().setName("blob" + i).setPayload(payloads.get(i)).build();
+				futures.add(ClientCalls.futureUnaryCall(client.getManagedChannel().newCall(methodDescriptor, CallOptions.DEFAULT), request));
+			}
+			for (int i = 0; i < calls; ++i) {
+				Hello.HelloBlobReply reply = futures.get(i).get(30, TimeUnit.SECONDS);
+				try {
+					assertEquals("Hello, blob" + i, reply.getMessage());
+					assertEquals(payloads.get(i), reply.getPayload(), "payload of call " + i + " of " + payloadSize + " bytes");
+				} finally {
+					replyMarshaller.release(reply);
+				}
+			}
+		} finally {
+			client.getManagedChannel().shutdownNow();
+			client.awaitTermination(5, TimeUnit.SECONDS);
+			serverLauncher.getServer().shutdownNow();
+			serverLauncher.awaitTermination(5, TimeUnit.SECONDS);
+		}
+	}
+}